@@ -2,11 +2,14 @@ package de.tomalbrc.bil;
 
 import com.mojang.logging.LogUtils;
 import de.tomalbrc.bil.command.BILCommand;
+import de.tomalbrc.bil.util.AsyncTickScheduler;
+import de.tomalbrc.bil.util.ModConfig;
 import de.tomalbrc.bil.util.RPUtil;
 import eu.pb4.polymer.resourcepack.api.PolymerResourcePackUtils;
 import gg.moonflower.molangcompiler.api.MolangCompiler;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import org.slf4j.Logger;
 
 public class BIL implements ModInitializer {
@@ -16,10 +19,14 @@ public class BIL implements ModInitializer {
 
     @Override
     public void onInitialize() {
+        ModConfig.load();
+
         CommandRegistrationCallback.EVENT.register((dispatcher, context, selection) -> {
             BILCommand.register(dispatcher);
         });
 
         PolymerResourcePackUtils.RESOURCE_PACK_AFTER_INITIAL_CREATION_EVENT.register(RPUtil::addAdditional);
+
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> AsyncTickScheduler.shutdown());
     }
 }
@@ -1,7 +1,9 @@
 package de.tomalbrc.bil.api;
 
 import de.tomalbrc.bil.core.holder.wrapper.Locator;
+import de.tomalbrc.bil.core.model.LevelOfDetail;
 import de.tomalbrc.bil.core.model.Model;
+import org.jetbrains.annotations.Nullable;
 
 @SuppressWarnings("unused")
 public interface AnimatedHolder {
@@ -35,6 +37,25 @@ public interface AnimatedHolder {
      */
     void setScale(float scale);
 
+    /**
+     * Sets the level of detail settings of this holder.
+     * If null, the settings of the model are used, or the global settings if the model has none.
+     */
+    void setLevelOfDetail(@Nullable LevelOfDetail levelOfDetail);
+
+    /**
+     * Returns the level of detail settings used by this holder.
+     */
+    LevelOfDetail getLevelOfDetail();
+
+    /**
+     * Makes this holder update its bones every given number of ticks.
+     * Animations are sampled ahead and interpolated over the interval, which looks nearly the same for most models.
+     */
+    default void setUpdateInterval(int updateInterval) {
+        this.setLevelOfDetail(this.getLevelOfDetail().withUpdateInterval(updateInterval));
+    }
+
     /**
      * Sets the color of this holder.
      * Only works if the item is dyeable and the intermediate faces have tintindex 0.
@@ -0,0 +1,26 @@
+package de.tomalbrc.bil.command;
+
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import de.tomalbrc.bil.util.AsyncTickScheduler;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+
+public class AsyncCommand {
+    public static ArgumentBuilder<CommandSourceStack, ?> register() {
+        return Commands.literal("async").requires(source -> source.hasPermission(2)).executes(context -> {
+            AsyncTickScheduler.Stats stats = AsyncTickScheduler.getLastTickStats();
+            String message = String.format("Async tick: %d threads, queue depth %d (last tick %d), %d holders, %.2fms wall time, %.2fms blocked",
+                    AsyncTickScheduler.getThreadCount(),
+                    AsyncTickScheduler.getQueueDepth(),
+                    stats.queueDepth(),
+                    stats.holders(),
+                    stats.wallTime() / 1_000_000.0,
+                    stats.blockedTime() / 1_000_000.0
+            );
+            context.getSource().sendSuccess(() -> Component.literal(message), false);
+            return Command.SINGLE_SUCCESS;
+        });
+    }
+}
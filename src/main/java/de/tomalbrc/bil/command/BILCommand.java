@@ -8,6 +8,7 @@ public class BILCommand {
     public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
         var builder = Commands.literal("bil");
         builder.then(ModelCommand.register());
+        builder.then(AsyncCommand.register());
         dispatcher.register(builder);
     }
 }
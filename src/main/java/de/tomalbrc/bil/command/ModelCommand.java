@@ -16,7 +16,7 @@ import de.tomalbrc.bil.api.VariantController;
 import de.tomalbrc.bil.core.extra.ModelEntity;
 import de.tomalbrc.bil.core.model.Model;
 import de.tomalbrc.bil.core.model.Variant;
-import de.tomalbrc.bil.file.loader.BbModelLoader;
+import de.tomalbrc.bil.file.loader.ModelRegistry;
 import de.tomalbrc.bil.util.Utils;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
@@ -29,8 +29,9 @@ import net.minecraft.world.phys.Vec3;
 
 import java.util.Collection;
 import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
 
 public class ModelCommand {
     private static final String TARGETS = "targets";
@@ -42,6 +43,9 @@ public class ModelCommand {
         // Create model command
         builder.then(modelCreator());
 
+        // Model registry command
+        builder.then(modelRegistry());
+
         // Manipulate model command
         builder.then(Commands.argument(TARGETS, EntityArgument.entities())
                 .then(scaleManipulator())
@@ -70,29 +74,67 @@ public class ModelCommand {
         return count;
     }
 
-    private static int spawnModel(CommandSourceStack source, String path) throws CommandSyntaxException {
-        return spawnModel(source, () -> new BbModelLoader().load(path), path);
+    private static int spawnModel(CommandSourceStack source, String path) {
+        CompletableFuture<Model> future = ModelRegistry.get(path);
+        if (!future.isDone()) {
+            source.sendSuccess(() -> Component.literal("Loading model..."), false);
+        }
+
+        // Spawn on the main thread once the model has been loaded in the background.
+        future.whenCompleteAsync((model, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                if (cause instanceof JsonParseException) {
+                    BIL.LOGGER.error("{} is not a valid model file!", path, cause);
+                    source.sendFailure(Component.literal(cause.getMessage() + "\nCheck the server console for more information."));
+                } else {
+                    source.sendFailure(Component.literal("Failed to load model!\n" + cause.getMessage()));
+                }
+            } else {
+                spawnModel(source, model);
+            }
+        }, source.getServer());
+
+        return Command.SINGLE_SUCCESS;
     }
 
-    private static int spawnModel(CommandSourceStack source, Supplier<Model> supplier, String path) throws CommandSyntaxException {
+    private static void spawnModel(CommandSourceStack source, Model model) {
         ServerLevel level = source.getLevel();
         Vec3 pos = source.getPosition();
         Vec2 rot = source.getRotation();
 
-        try {
-            Model model = supplier.get();
-            ModelEntity entity = new ModelEntity(level, model);
-            entity.moveTo(pos.x, pos.y, pos.z, rot.y, 0F);
-
-            level.addFreshEntity(entity);
-            source.sendSuccess(() -> Component.literal("Successfully spawned model!"), false);
-        } catch (JsonParseException ex) {
-            BIL.LOGGER.error("{} is not a valid model file!", path, ex);
-            throw Utils.buildCommandException(ex.getMessage() + "\nCheck the server console for more information.");
-        } catch (Throwable throwable) {
-            throw Utils.buildCommandException("Failed to load model!\n" + throwable.getMessage());
+        ModelEntity entity = new ModelEntity(level, model);
+        entity.moveTo(pos.x, pos.y, pos.z, rot.y, 0F);
+
+        level.addFreshEntity(entity);
+        source.sendSuccess(() -> Component.literal("Successfully spawned model!"), false);
+    }
+
+    private static int reloadModel(CommandSourceStack source, String path) {
+        ModelRegistry.reload(path).whenCompleteAsync((model, throwable) -> {
+            if (throwable != null) {
+                BIL.LOGGER.error("Failed to reload model {}", path, throwable);
+                source.sendFailure(Component.literal("Failed to reload model!\nCheck the server console for more information."));
+            } else {
+                source.sendSuccess(() -> Component.literal("Reloaded model " + path), false);
+            }
+        }, source.getServer());
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int unloadModel(CommandSourceStack source, String path) throws CommandSyntaxException {
+        if (!ModelRegistry.unload(path)) {
+            throw Utils.buildCommandException("Model is not loaded: " + path);
         }
 
+        source.sendSuccess(() -> Component.literal("Unloaded model " + path), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int modelStats(CommandSourceStack source) {
+        ModelRegistry.Stats stats = ModelRegistry.getStats();
+        source.sendSuccess(() -> Component.literal(String.format("Models: %d loaded, %d loading, %d KiB of baked poses", stats.loaded(), stats.loading(), stats.poseBytes() / 1024)), false);
         return Command.SINGLE_SUCCESS;
     }
 
@@ -109,6 +151,34 @@ public class ModelCommand {
         return builder;
     }
 
+    private static ArgumentBuilder<CommandSourceStack, ?> modelRegistry() {
+        var builder = Commands.literal("registry");
+
+        builder.then(Commands.literal("reload")
+                .then(Commands.argument("model", StringArgumentType.greedyString())
+                        .executes(context -> reloadModel(
+                                context.getSource(),
+                                StringArgumentType.getString(context, "model")
+                        ))
+                )
+        );
+
+        builder.then(Commands.literal("unload")
+                .then(Commands.argument("model", StringArgumentType.greedyString())
+                        .executes(context -> unloadModel(
+                                context.getSource(),
+                                StringArgumentType.getString(context, "model")
+                        ))
+                )
+        );
+
+        builder.then(Commands.literal("stats")
+                .executes(context -> modelStats(context.getSource()))
+        );
+
+        return builder;
+    }
+
     private static ArgumentBuilder<CommandSourceStack, ?> scaleManipulator() {
         var builder = Commands.literal("scale");
 
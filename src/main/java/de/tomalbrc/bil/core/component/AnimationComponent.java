@@ -1,15 +1,24 @@
 package de.tomalbrc.bil.core.component;
 
+import de.tomalbrc.bil.BIL;
 import de.tomalbrc.bil.api.Animator;
 import de.tomalbrc.bil.core.holder.base.AbstractAnimationHolder;
 import de.tomalbrc.bil.core.holder.wrapper.AbstractWrapper;
 import de.tomalbrc.bil.core.model.Animation;
 import de.tomalbrc.bil.core.model.Frame;
+import de.tomalbrc.bil.core.model.FramePoseCache;
 import de.tomalbrc.bil.core.model.Model;
+import de.tomalbrc.bil.core.model.MolangTrack;
 import de.tomalbrc.bil.core.model.Pose;
+import de.tomalbrc.bil.core.model.PoseTrack;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
 
 import java.util.Collections;
 import java.util.UUID;
@@ -19,11 +28,23 @@ import java.util.function.IntConsumer;
 public class AnimationComponent extends ComponentBase implements Animator {
     private final Object2ObjectOpenHashMap<String, AnimationPlayer> animationMap = new Object2ObjectOpenHashMap<>();
     private final CopyOnWriteArrayList<AnimationPlayer> animationPlayerList = new CopyOnWriteArrayList<>();
+    private final MolangContext molangContext = new MolangContext();
+    // Buffers for evaluating live channels, only used during the tick of the holder
+    private final Vector3f molangVector = new Vector3f();
+    private final Quaternionf molangQuaternion = new Quaternionf();
+    private final Matrix4f molangMatrix = new Matrix4f();
 
     public AnimationComponent(Model model, AbstractAnimationHolder holder) {
         super(model, holder);
     }
 
+    /**
+     * Returns the Molang environment in which live channels of animations are evaluated.
+     */
+    public MolangContext getMolangContext() {
+        return this.molangContext;
+    }
+
     @Override
     public void playAnimation(String name, int priority, boolean restartPaused, IntConsumer onFrame, Runnable onFinish) {
         AnimationPlayer animationPlayer = this.animationMap.get(name);
@@ -46,11 +67,13 @@ public class AnimationComponent extends ComponentBase implements Animator {
                     animationPlayer.resetFrameCounter(false);
                 }
                 animationPlayer.state = AnimationPlayer.State.PLAYING;
+                this.markBonesDirty(animationPlayer.animation);
             }
 
             if (priority != animationPlayer.priority) {
                 animationPlayer.priority = priority;
                 Collections.sort(this.animationPlayerList);
+                this.markBonesDirty(animationPlayer.animation);
             }
         }
     }
@@ -68,6 +91,7 @@ public class AnimationComponent extends ComponentBase implements Animator {
         AnimationPlayer animationPlayer = this.animationMap.get(name);
         if (animationPlayer != null && animationPlayer.state == AnimationPlayer.State.PLAYING) {
             animationPlayer.state = AnimationPlayer.State.PAUSED;
+            this.markBonesDirty(animationPlayer.animation);
         }
     }
 
@@ -76,11 +100,13 @@ public class AnimationComponent extends ComponentBase implements Animator {
         AnimationPlayer animationPlayer = this.animationMap.remove(name);
         if (animationPlayer != null) {
             this.animationPlayerList.remove(animationPlayer);
+            this.markBonesDirty(animationPlayer.animation);
         }
     }
 
     private void addAnimationPlayer(AnimationPlayer animationPlayer) {
         this.animationMap.put(animationPlayer.name, animationPlayer);
+        this.markBonesDirty(animationPlayer.animation);
 
         if (this.animationPlayerList.size() > 0 && animationPlayer.priority > 0) {
             int index = Collections.binarySearch(this.animationPlayerList, animationPlayer);
@@ -91,14 +117,64 @@ public class AnimationComponent extends ComponentBase implements Animator {
     }
 
     public void tickAnimations() {
+        // Bones are interpolated over the whole update interval, so poses are sampled at the frame the interpolation ends on.
+        int lookAhead = this.holder.getUpdateInterval() - 1;
+
         for (int index = this.animationPlayerList.size() - 1; index >= 0; index--) {
             AnimationPlayer animationPlayer = this.animationPlayerList.get(index);
             if (animationPlayer.hasFinished()) {
                 this.animationMap.remove(animationPlayer.name);
                 this.animationPlayerList.remove(index);
+                this.markBonesDirty(animationPlayer.animation);
                 animationPlayer.onFinished();
             } else {
+                boolean wasAnimating = animationPlayer.shouldAnimate();
+                boolean wasResetting = animationPlayer.inResetState();
+                int previousFrameIndex = animationPlayer.sampledFrameIndex;
+
                 animationPlayer.tick();
+                animationPlayer.updateSampledFrame(lookAhead);
+
+                if (wasAnimating != animationPlayer.shouldAnimate() || wasResetting != animationPlayer.inResetState()) {
+                    this.markBonesDirty(animationPlayer.animation);
+                } else if (previousFrameIndex != animationPlayer.sampledFrameIndex) {
+                    this.markChangedBones(animationPlayer.animation, previousFrameIndex, animationPlayer.sampledFrameIndex);
+                }
+
+                // Live channels may depend on entity queries, so they are evaluated again every tick.
+                if (animationPlayer.animation.hasMolangTracks() && animationPlayer.shouldAnimate()) {
+                    animationPlayer.molangEvaluated = false;
+                    this.markMolangBones(animationPlayer.animation);
+                }
+            }
+        }
+    }
+
+    private void markBonesDirty(Animation animation) {
+        PoseTrack[] tracks = animation.poseTracks();
+        for (int i = 0; i < tracks.length; i++) {
+            if (tracks[i] != null) {
+                this.holder.markBoneDirty(i);
+            }
+        }
+        this.markMolangBones(animation);
+    }
+
+    private void markMolangBones(Animation animation) {
+        MolangTrack[] tracks = animation.molangTracks();
+        for (int i = 0; i < tracks.length; i++) {
+            if (tracks[i] != null && tracks[i].visible()) {
+                this.holder.markBoneDirty(i);
+            }
+        }
+    }
+
+    private void markChangedBones(Animation animation, int previousFrameIndex, int frameIndex) {
+        PoseTrack[] tracks = animation.poseTracks();
+        for (int i = 0; i < tracks.length; i++) {
+            PoseTrack track = tracks[i];
+            if (track != null && (previousFrameIndex < 0 || track.poseIndex(previousFrameIndex) != track.poseIndex(frameIndex))) {
+                this.holder.markBoneDirty(i);
             }
         }
     }
@@ -106,6 +182,7 @@ public class AnimationComponent extends ComponentBase implements Animator {
     @Nullable
     public Pose findPose(AbstractWrapper wrapper) {
         UUID uuid = wrapper.node().uuid();
+        int boneIndex = wrapper.node().index();
         Pose pose = null;
 
         for (AnimationPlayer animationPlayer : this.animationPlayerList) {
@@ -113,7 +190,7 @@ public class AnimationComponent extends ComponentBase implements Animator {
                 if (animationPlayer.inResetState()) {
                     pose = wrapper.getDefaultPose();
                 } else {
-                    pose = this.findAnimationPose(wrapper, animationPlayer, uuid);
+                    pose = this.findAnimationPose(wrapper, animationPlayer, boneIndex);
                     if (pose != null) {
                         return pose;
                     }
@@ -134,37 +211,41 @@ public class AnimationComponent extends ComponentBase implements Animator {
     }
 
     @Nullable
-    private Pose findAnimationPose(AbstractWrapper wrapper, AnimationPlayer anim, UUID uuid) {
+    private Pose findAnimationPose(AbstractWrapper wrapper, AnimationPlayer anim, int boneIndex) {
         Animation animation = anim.animation;
-        Frame frame = anim.currentFrame;
-        if (frame == null) {
+        if (anim.currentFrame == null) {
             return null;
         }
 
-        Pose pose = frame.poses().get(uuid);
-        if (pose != null) {
-            wrapper.setLastPose(pose, animation);
+        if (animation.molangTrack(boneIndex) != null) {
+            Pose pose = anim.getMolangPoses(this)[boneIndex];
+            if (pose != null) {
+                // Evaluated poses have no cached transform data.
+                wrapper.setLastPose(pose, null);
+            }
             return pose;
         }
 
-        if (animation == wrapper.getLastAnimation()) {
-            return wrapper.getLastPose();
+        PoseTrack track = animation.poseTrack(boneIndex);
+        if (track == null) {
+            // This animation never changes the pose of this bone.
+            return null;
         }
 
-        // Since the animation just switched, the last known pose is no longer valid.
-        // To ensure that this node still gets updated properly, we must backtrack the new animation to find a valid pose.
-        // This should preferably be avoided as much as possible, as it is a bit expensive.
-        final Frame[] frames = animation.frames();
-        final int startIndex = (frames.length - 1) - Math.max(anim.frameCounter - 1, 0);
+        // Frames that don't change the bone share the stored pose of the frame before them,
+        // so this also resolves the correct pose right after switching or skipping frames.
+        int poseIndex = track.poseIndex(anim.sampledFrameIndex);
+        if (poseIndex < 0) {
+            return null;
+        }
 
-        for (int i = startIndex; i >= 0; i--) {
-            pose = frames[i].poses().get(uuid);
-            if (pose != null) {
-                wrapper.setLastPose(pose, animation);
-                return pose;
-            }
+        if (animation == wrapper.getLastAnimation() && poseIndex == wrapper.getLastPoseIndex()) {
+            return wrapper.getLastPose();
         }
-        return null;
+
+        Pose pose = anim.getFramePoses().get(boneIndex);
+        wrapper.setLastPose(pose, animation, poseIndex);
+        return pose;
     }
 
     private static class AnimationPlayer implements Comparable<AnimationPlayer> {
@@ -174,6 +255,18 @@ public class AnimationComponent extends ComponentBase implements Animator {
         private final String name;
 
         private Frame currentFrame;
+        private int currentFrameIndex = -1;
+        private int sampledFrameIndex = -1;
+        // Shared poses of the sampled frame, resolved in the first async tick that needs them.
+        @Nullable
+        private FramePoseCache.FramePoses framePoses;
+        // Poses of the live channels, evaluated in the first async tick that needs them.
+        @Nullable
+        private Pose[] molangPoses;
+        @Nullable
+        private Matrix4f[] molangTransforms;
+        private boolean molangEvaluated;
+        private boolean molangFailed;
         private int frameCounter = -1;
         private int priority;
         private boolean looped;
@@ -218,6 +311,7 @@ public class AnimationComponent extends ComponentBase implements Animator {
             if (this.frameCounter >= 0 && this.frameCounter < frames.length) {
                 int index = (frames.length - 1) - this.frameCounter;
                 this.currentFrame = frames[index];
+                this.currentFrameIndex = index;
 
                 if (this.onFrameCallback != null) {
                     this.onFrameCallback.accept(index);
@@ -229,6 +323,73 @@ public class AnimationComponent extends ComponentBase implements Animator {
             }
         }
 
+        private void updateSampledFrame(int lookAhead) {
+            int frameCount = this.animation.frames().length;
+            int frameIndex = -1;
+            if (this.currentFrameIndex >= 0) {
+                // Looping animations continue at their first frame, the others stay on their last one.
+                frameIndex = this.animation.loopMode() == Animation.LoopMode.loop
+                        ? (this.currentFrameIndex + lookAhead) % frameCount
+                        : Math.min(this.currentFrameIndex + lookAhead, frameCount - 1);
+            }
+            if (frameIndex != this.sampledFrameIndex) {
+                this.sampledFrameIndex = frameIndex;
+                this.framePoses = null;
+            }
+        }
+
+        private FramePoseCache.FramePoses getFramePoses() {
+            if (this.framePoses == null) {
+                this.framePoses = FramePoseCache.get(this.animation, this.sampledFrameIndex);
+            }
+            return this.framePoses;
+        }
+
+        private Pose[] getMolangPoses(AnimationComponent component) {
+            if (!this.molangEvaluated) {
+                this.evaluateMolangTracks(component);
+                this.molangEvaluated = true;
+            }
+            return this.molangPoses;
+        }
+
+        private void evaluateMolangTracks(AnimationComponent component) {
+            MolangTrack[] tracks = this.animation.molangTracks();
+            if (this.molangTransforms == null) {
+                this.molangPoses = new Pose[tracks.length];
+                this.molangTransforms = new Matrix4f[tracks.length];
+                for (int i = 0; i < tracks.length; i++) {
+                    if (tracks[i] != null) {
+                        this.molangTransforms[i] = new Matrix4f();
+                    }
+                }
+            }
+
+            MolangContext context = component.molangContext;
+            context.setAnimTime(this.animation.frames()[this.sampledFrameIndex].time());
+            MolangEnvironment environment = context.environment();
+
+            for (int i = 0; i < tracks.length; i++) {
+                MolangTrack track = tracks[i];
+                if (track == null) {
+                    continue;
+                }
+
+                try {
+                    track.evaluate(environment, this.molangTransforms, this.molangTransforms[i], component.molangVector, component.molangQuaternion);
+                    if (track.visible()) {
+                        this.molangPoses[i] = track.pose(this.molangTransforms[i], component.molangMatrix);
+                    }
+                } catch (MolangRuntimeException e) {
+                    // Bones keep their last pose, the error is only logged once per animation player.
+                    if (!this.molangFailed) {
+                        this.molangFailed = true;
+                        BIL.LOGGER.warn("Failed to evaluate molang channels of animation {}", this.name, e);
+                    }
+                }
+            }
+        }
+
         private void skipToFrame(int frame) {
             this.frameCounter = this.animation.duration() - 1 - frame;
         }
@@ -0,0 +1,99 @@
+package de.tomalbrc.bil.core.component;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Molang environment in which the live channels of animations are evaluated, one per animation component.
+ * <p>
+ * Query values are set by the holder on the main thread and read during its async tick. The environment is
+ * created once and reused for every evaluation, only {@code query.anim_time} changes between animations.
+ */
+public class MolangContext {
+    public static final String ANIM_TIME = "anim_time";
+    public static final String LIFE_TIME = "life_time";
+    public static final String GROUND_SPEED = "ground_speed";
+    public static final String VERTICAL_SPEED = "vertical_speed";
+    public static final String BODY_Y_ROTATION = "body_y_rotation";
+    public static final String HEALTH = "health";
+    public static final String MAX_HEALTH = "max_health";
+    public static final String IS_ON_GROUND = "is_on_ground";
+    public static final String IS_IN_WATER = "is_in_water";
+
+    private final Map<String, Query> queries = new ConcurrentHashMap<>();
+    private final Query animTime;
+    private volatile MolangEnvironment environment;
+
+    public MolangContext() {
+        this.animTime = this.query(ANIM_TIME);
+        for (String name : new String[]{LIFE_TIME, GROUND_SPEED, VERTICAL_SPEED, BODY_Y_ROTATION, HEALTH, MAX_HEALTH, IS_ON_GROUND, IS_IN_WATER}) {
+            this.query(name);
+        }
+    }
+
+    /**
+     * Sets the value of {@code query.<name>}. Queries that aren't set return 0.
+     */
+    public void setQuery(String name, float value) {
+        this.query(name).value = value;
+    }
+
+    public void setQuery(String name, boolean value) {
+        this.setQuery(name, value ? 1 : 0);
+    }
+
+    public float getQuery(String name) {
+        Query query = this.queries.get(name);
+        return query != null ? query.value : 0;
+    }
+
+    void setAnimTime(float time) {
+        this.animTime.value = time;
+    }
+
+    MolangEnvironment environment() {
+        MolangEnvironment environment = this.environment;
+        if (environment == null) {
+            synchronized (this) {
+                if (this.environment == null) {
+                    MolangRuntime.Builder builder = MolangRuntime.runtime();
+                    this.queries.forEach(builder::setQuery);
+                    this.environment = builder.create();
+                }
+                environment = this.environment;
+            }
+        }
+        return environment;
+    }
+
+    private Query query(String name) {
+        Query query = this.queries.get(name);
+        return query != null ? query : this.addQuery(name);
+    }
+
+    // Adding a query and building the environment share the lock, so a new query is never missed by an environment
+    private synchronized Query addQuery(String name) {
+        Query query = this.queries.get(name);
+        if (query == null) {
+            query = new Query();
+            this.queries.put(name, query);
+            // queries added later need a new environment
+            this.environment = null;
+        }
+        return query;
+    }
+
+    private static class Query implements MolangExpression {
+        // written on the main thread, read during the async tick
+        private volatile float value;
+
+        @Override
+        public float get(MolangEnvironment environment) {
+            return this.value;
+        }
+    }
+}
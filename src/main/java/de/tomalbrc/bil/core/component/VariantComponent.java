@@ -31,6 +31,7 @@ public class VariantComponent extends ComponentBase implements VariantController
             for (Bone bone : this.holder.getBones()) {
                 bone.updateModelData(bone.node().modelData().value());
             }
+            this.holder.markAllBonesDirty();
         }
     }
 
@@ -76,5 +77,6 @@ public class VariantComponent extends ComponentBase implements VariantController
                 bone.updateModelData(modelData.value());
             }
         }
+        this.holder.markAllBonesDirty();
     }
 }
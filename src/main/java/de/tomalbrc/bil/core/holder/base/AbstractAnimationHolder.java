@@ -3,40 +3,79 @@ package de.tomalbrc.bil.core.holder.base;
 import de.tomalbrc.bil.api.AnimatedHolder;
 import de.tomalbrc.bil.api.Animator;
 import de.tomalbrc.bil.core.component.AnimationComponent;
+import de.tomalbrc.bil.core.component.MolangContext;
 import de.tomalbrc.bil.core.component.VariantComponent;
 import de.tomalbrc.bil.core.holder.wrapper.Bone;
 import de.tomalbrc.bil.core.holder.wrapper.DisplayWrapper;
 import de.tomalbrc.bil.core.holder.wrapper.Locator;
+import de.tomalbrc.bil.core.model.Animation;
+import de.tomalbrc.bil.core.model.LevelOfDetail;
 import de.tomalbrc.bil.core.model.Model;
 import de.tomalbrc.bil.core.model.Node;
 import de.tomalbrc.bil.core.model.Pose;
+import de.tomalbrc.bil.core.model.PoseTrack;
+import de.tomalbrc.bil.core.model.TransformData;
+import de.tomalbrc.bil.util.ModConfig;
+import de.tomalbrc.bil.util.Utils;
 import eu.pb4.polymer.virtualentity.api.elements.ItemDisplayElement;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.game.ClientGamePacketListener;
+import net.minecraft.network.protocol.game.ClientboundSetEntityDataPacket;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.network.ServerGamePacketListenerImpl;
+import net.minecraft.world.phys.Vec3;
 import org.jetbrains.annotations.Nullable;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
 
+import java.util.BitSet;
 import java.util.List;
+import java.util.function.Consumer;
 
 public abstract class AbstractAnimationHolder extends AbstractElementHolder implements AnimatedHolder {
+    // Number of ticks between checks of the distance to the nearest watching player.
+    private static final int LOD_CHECK_INTERVAL = 10;
 
     protected final Model model;
     protected final AnimationComponent animationComponent;
     protected final VariantComponent variantComponent;
     protected final Object2ObjectOpenHashMap<String, Locator> locatorMap;
 
+    // Node indices of the bones marked on the main thread since the last async tick was scheduled.
+    private final BitSet pendingDirtyBones = new BitSet();
+    // Node indices of the bones that need to be updated in the next async tick, only used by the async tick.
+    protected final BitSet dirtyBones = new BitSet();
+
+    // Scratch values for applying poses, the display elements copy the values they are given.
+    protected final Vector3f translationBuffer = new Vector3f();
+    protected final Vector3f scaleBuffer = new Vector3f();
+    protected final Quaternionf rotationBuffer = new Quaternionf();
+
     protected Bone[] bones;
     protected Locator[] locators;
     protected float scale = 1F;
     protected int color = -1;
 
+    @Nullable
+    protected LevelOfDetail levelOfDetail;
+    protected LevelOfDetail.Level lodLevel = LevelOfDetail.Level.NEAR;
+    protected int interpolationDuration;
+    private int lodCheckTicks;
+    private int updateTicks;
+    // Whether any animation of the model has live Molang channels, which need query values every tick.
+    private final boolean hasMolangTracks;
+    private int lifeTicks;
+
     protected AbstractAnimationHolder(Model model, ServerLevel level) {
         super(level);
         this.model = model;
         this.animationComponent = new AnimationComponent(model, this);
         this.variantComponent = new VariantComponent(model, this);
         this.locatorMap = new Object2ObjectOpenHashMap<>();
+        this.hasMolangTracks = model.animations().values().stream().anyMatch(Animation::hasMolangTracks);
     }
 
     @Override
@@ -55,6 +94,11 @@ public abstract class AbstractAnimationHolder extends AbstractElementHolder impl
         for (index = 0; index < bones.size(); index++) {
             this.bones[index] = bones.get(index);
         }
+
+        if (this.bones.length > 0) {
+            this.interpolationDuration = this.bones[0].element().getInterpolationDuration();
+        }
+        this.updateInterpolationDuration();
     }
 
     protected void setupElements(List<Bone> bones) {
@@ -62,7 +106,7 @@ public abstract class AbstractAnimationHolder extends AbstractElementHolder impl
             Pose defaultPose = this.model.defaultPose().get(node.uuid());
             switch (node.type()) {
                 case bone -> {
-                    ItemDisplayElement bone = node.display();
+                    ItemDisplayElement bone = this.createBoneDisplay(node);
                     if (bone != null) {
                         bones.add(Bone.of(bone, node, defaultPose));
                         this.addElement(bone);
@@ -75,6 +119,27 @@ public abstract class AbstractAnimationHolder extends AbstractElementHolder impl
         }
     }
 
+    /**
+     * Creates the display element of a bone for this holder, based on the display of the node.
+     * Models are shared between holders, so the display of the node itself is never added to a holder.
+     * <p>
+     * The element gets all tracked data of the node display, like brightness, glow, view range or billboard.
+     * Element state that isn't tracked data, like the offset, is not copied.
+     */
+    @Nullable
+    protected ItemDisplayElement createBoneDisplay(Node node) {
+        ItemDisplayElement template = node.display();
+        if (template == null) {
+            return null;
+        }
+
+        ItemDisplayElement element = new ItemDisplayElement();
+        Utils.copyTrackedData(template.getDataTracker(), element.getDataTracker());
+        // Every holder gets its own stack, they can be changed per holder
+        element.setItem(template.getItem().copy());
+        return element;
+    }
+
     @Override
     protected void onDataLoaded() {
         for (Bone bone : this.bones) {
@@ -82,6 +147,21 @@ public abstract class AbstractAnimationHolder extends AbstractElementHolder impl
         }
     }
 
+    @Override
+    protected void startWatchingExtraPackets(ServerGamePacketListenerImpl player, Consumer<Packet<ClientGamePacketListener>> consumer) {
+        super.startWatchingExtraPackets(player, consumer);
+        // Re-evaluate the level of detail in the next tick, the new player might be closer.
+        this.lodCheckTicks = 0;
+
+        // The data trackers don't know about transforms that were sent directly.
+        for (Bone bone : this.bones) {
+            TransformData transformData = bone.getSentTransformData();
+            if (transformData != null) {
+                consumer.accept(new ClientboundSetEntityDataPacket(bone.element().getEntityId(), transformData.values()));
+            }
+        }
+    }
+
     @Override
     protected boolean shouldSkipTick() {
         return false;
@@ -89,13 +169,105 @@ public abstract class AbstractAnimationHolder extends AbstractElementHolder impl
 
     @Override
     protected void onTick() {
+        // The update interval decides how far ahead animations are sampled, so it is updated first.
+        this.updateLevelOfDetail();
+        if (this.hasMolangTracks) {
+            this.updateMolangQueries(this.animationComponent.getMolangContext());
+        }
         this.animationComponent.tickAnimations();
     }
 
+    /**
+     * Sets the query values that live Molang channels are evaluated with. Called on the main thread every tick,
+     * only for models that have live channels.
+     */
+    protected void updateMolangQueries(MolangContext context) {
+        context.setQuery(MolangContext.LIFE_TIME, ++this.lifeTicks / 20F);
+    }
+
+    protected void updateLevelOfDetail() {
+        if (--this.lodCheckTicks > 0) {
+            return;
+        }
+        this.lodCheckTicks = LOD_CHECK_INTERVAL;
+
+        LevelOfDetail.Level level = this.getLevelOfDetail().levelAt(this.getNearestWatcherDistanceSqr());
+        if (level != this.lodLevel) {
+            int previousInterval = this.getUpdateInterval();
+            this.lodLevel = level;
+            if (previousInterval != this.getUpdateInterval()) {
+                this.updateInterpolationDuration();
+                // Animations are now sampled at a different frame.
+                this.markAllBonesDirty();
+            }
+        }
+    }
+
+    protected void updateInterpolationDuration() {
+        // Interpolate over the whole update interval, so that the model still moves smoothly.
+        int duration = Math.max(this.interpolationDuration, this.getUpdateInterval());
+        for (Bone bone : this.bones) {
+            bone.element().setInterpolationDuration(duration);
+        }
+    }
+
+    protected double getNearestWatcherDistanceSqr() {
+        Vec3 pos = this.getPos();
+        double distance = Double.MAX_VALUE;
+        for (ServerGamePacketListenerImpl connection : this.getWatchingPlayers()) {
+            distance = Math.min(distance, connection.player.distanceToSqr(pos));
+        }
+        return distance;
+    }
+
+    /**
+     * Returns the number of ticks between bone updates at the current level of detail.
+     */
+    public int getUpdateInterval() {
+        return this.getLevelOfDetail().updateInterval(this.lodLevel);
+    }
+
+    @Override
+    public LevelOfDetail getLevelOfDetail() {
+        if (this.levelOfDetail != null) {
+            return this.levelOfDetail;
+        }
+        return this.model.levelOfDetail() != null ? this.model.levelOfDetail() : ModConfig.getInstance().getLevelOfDetail();
+    }
+
+    @Override
+    public void setLevelOfDetail(@Nullable LevelOfDetail levelOfDetail) {
+        int previousInterval = this.getUpdateInterval();
+        this.levelOfDetail = levelOfDetail;
+        this.lodCheckTicks = 0;
+
+        if (previousInterval != this.getUpdateInterval() && this.bones != null) {
+            this.updateInterpolationDuration();
+            this.markAllBonesDirty();
+        }
+    }
+
+    @Override
+    public void prepareAsyncTick() {
+        // The previous async tick has finished, and the next one only starts after this, so the sets can't be in use
+        if (!this.pendingDirtyBones.isEmpty()) {
+            this.dirtyBones.or(this.pendingDirtyBones);
+            this.pendingDirtyBones.clear();
+        }
+    }
+
     @Override
     protected void onAsyncTick() {
-        for (Bone bone : this.bones) {
-            this.updateElement(bone);
+        // Dirty bones are kept while the holder skips updates, so all changes are applied once it updates again.
+        boolean update = this.lodLevel != LevelOfDetail.Level.FROZEN && ++this.updateTicks >= this.getUpdateInterval();
+        if (update && !this.dirtyBones.isEmpty()) {
+            this.updateTicks = 0;
+            for (Bone bone : this.bones) {
+                if (this.dirtyBones.get(bone.node().index())) {
+                    this.updateElement(bone);
+                }
+            }
+            this.dirtyBones.clear();
         }
 
         for (Locator locator : this.locators) {
@@ -127,9 +299,13 @@ public abstract class AbstractAnimationHolder extends AbstractElementHolder impl
     }
 
     protected void applyPose(Pose pose, DisplayWrapper<?> display) {
+        if (this.applyCachedTransform(pose, display)) {
+            return;
+        }
+
         if (this.scale != 1F) {
-            display.element().setScale(pose.scale().mul(this.scale));
-            display.element().setTranslation(pose.translation().mul(this.scale));
+            display.element().setScale(this.scaleBuffer.set(pose.readOnlyScale()).mul(this.scale));
+            display.element().setTranslation(this.translationBuffer.set(pose.readOnlyTranslation()).mul(this.scale));
         } else {
             display.element().setScale(pose.readOnlyScale());
             display.element().setTranslation(pose.readOnlyTranslation());
@@ -141,6 +317,61 @@ public abstract class AbstractAnimationHolder extends AbstractElementHolder impl
         display.element().startInterpolationIfDirty();
     }
 
+    /**
+     * Sends the cached transform data of a baked pose directly, without going through the data tracker of the element.
+     * Returns false if the pose has to be applied through the data tracker instead.
+     */
+    protected boolean applyCachedTransform(Pose pose, DisplayWrapper<?> display) {
+        if (!(display instanceof Bone bone)) {
+            return false;
+        }
+
+        Animation animation = bone.getLastAnimation();
+        int poseIndex = bone.getLastPoseIndex();
+        if (animation != null && poseIndex >= 0 && bone.getLastPose() == pose && this.canCacheTransform(bone) && ModConfig.getInstance().cacheTransformData) {
+            PoseTrack track = animation.poseTrack(bone.node().index());
+            if (track != null) {
+                TransformData transformData = track.getTransformData(poseIndex, this.getTranslationOffsetY());
+                if (transformData != bone.getSentTransformData()) {
+                    bone.setSentTransformData(transformData);
+                    this.sendPacket(new ClientboundSetEntityDataPacket(bone.element().getEntityId(), transformData.values()));
+                }
+                return true;
+            }
+        }
+
+        bone.invalidateSentTransform();
+        return false;
+    }
+
+    /**
+     * Returns whether the transform of the given bone is exactly its baked pose, apart from the translation offset.
+     */
+    protected boolean canCacheTransform(DisplayWrapper<?> display) {
+        return this.scale == 1F && !display.isHead();
+    }
+
+    /**
+     * Returns how far the translation of all bones is moved down.
+     */
+    protected float getTranslationOffsetY() {
+        return 0;
+    }
+
+    /**
+     * Marks the bone with the given node index to be updated in the next async tick. Must be called on the main thread.
+     */
+    public void markBoneDirty(int nodeIndex) {
+        this.pendingDirtyBones.set(nodeIndex);
+    }
+
+    /**
+     * Marks all bones to be updated in the next async tick. Must be called on the main thread.
+     */
+    public void markAllBonesDirty() {
+        this.pendingDirtyBones.set(0, this.model.nodeMap().size());
+    }
+
     @Override
     public void setColor(int color) {
         if (color != this.color) {
@@ -148,6 +379,7 @@ public abstract class AbstractAnimationHolder extends AbstractElementHolder impl
             for (Bone bone : this.bones) {
                 bone.updateColor(color);
             }
+            this.markAllBonesDirty();
         }
     }
 
@@ -179,6 +411,7 @@ public abstract class AbstractAnimationHolder extends AbstractElementHolder impl
     @Override
     public void setScale(float scale) {
         this.scale = scale;
+        this.markAllBonesDirty();
     }
 
     public Bone[] getBones() {
@@ -1,10 +1,12 @@
 package de.tomalbrc.bil.core.holder.base;
 
 import de.tomalbrc.bil.util.IChunkMap;
+import de.tomalbrc.bil.util.PacketBroadcaster;
 import de.tomalbrc.bil.util.Utils;
 import eu.pb4.polymer.virtualentity.api.ElementHolder;
 import eu.pb4.polymer.virtualentity.api.attachment.HolderAttachment;
 import eu.pb4.polymer.virtualentity.api.elements.VirtualElement;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import net.minecraft.network.protocol.Packet;
 import net.minecraft.network.protocol.game.ClientGamePacketListener;
 import net.minecraft.server.MinecraftServer;
@@ -20,6 +22,10 @@ import org.jetbrains.annotations.Nullable;
 public abstract class AbstractElementHolder extends ElementHolder {
     protected final ServerLevel level;
     private ServerGamePacketListenerImpl[] watchingPlayers;
+    // Packets sent during the async tick, flushed as one bundle per watching player.
+    private final ObjectArrayList<Packet<ClientGamePacketListener>> packetBuffer = new ObjectArrayList<>();
+    @Nullable
+    private Thread asyncTickThread;
     private boolean elementsInitialized;
     private boolean isDataLoaded;
 
@@ -69,25 +75,50 @@ public abstract class AbstractElementHolder extends ElementHolder {
         IChunkMap.scheduleAsyncTick(this);
     }
 
+    /**
+     * Called on the main thread for every scheduled holder right before the async ticks are submitted.
+     * State changed by the main thread can be handed over to the async tick here without locking.
+     */
+    public void prepareAsyncTick() {
+    }
+
     public final void asyncTick() {
         this.watchingPlayers = this.getWatchingPlayers().toArray(this.watchingPlayers);
+        this.asyncTickThread = Thread.currentThread();
 
-        this.onAsyncTick();
+        try {
+            this.onAsyncTick();
+
+            for (VirtualElement element : this.getElements()) {
+                element.tick();
+            }
+        } finally {
+            this.asyncTickThread = null;
+            this.flushPackets();
+        }
+    }
 
-        for (VirtualElement element : this.getElements()) {
-            element.tick();
+    private void flushPackets() {
+        if (this.packetBuffer.isEmpty()) {
+            return;
         }
+
+        PacketBroadcaster.sendPacketsNoFlush(this.watchingPlayers, this.packetBuffer);
+        this.packetBuffer.clear();
     }
 
     @Override
     public void sendPacket(Packet<ClientGamePacketListener> packet) {
         if (this.getServer().isSameThread()) {
             super.sendPacket(packet);
+        } else if (Thread.currentThread() == this.asyncTickThread) {
+            this.packetBuffer.add(packet);
         } else {
             for (ServerGamePacketListenerImpl conn : this.watchingPlayers) {
-                if (conn != null) {
-                    Utils.sendPacketNoFlush(conn, packet);
+                if (conn == null) {
+                    break;
                 }
+                Utils.sendPacketNoFlush(conn, packet);
             }
         }
     }
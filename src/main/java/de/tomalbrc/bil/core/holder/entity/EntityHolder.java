@@ -2,6 +2,7 @@ package de.tomalbrc.bil.core.holder.entity;
 
 import de.tomalbrc.bil.api.AnimatedEntity;
 import de.tomalbrc.bil.api.AnimatedEntityHolder;
+import de.tomalbrc.bil.core.component.MolangContext;
 import de.tomalbrc.bil.core.holder.base.AbstractAnimationHolder;
 import de.tomalbrc.bil.core.holder.wrapper.Bone;
 import de.tomalbrc.bil.core.model.Model;
@@ -30,6 +31,8 @@ public abstract class EntityHolder<T extends Entity & AnimatedEntity> extends Ab
     protected final T parent;
     protected EntityDimensions dimensions;
     protected int tickCount;
+    protected float lastYRot = Float.NaN;
+    protected float lastXRot = Float.NaN;
 
     protected EntityHolder(T parent, Model model) {
         super(model, (ServerLevel) parent.level());
@@ -87,6 +90,37 @@ public abstract class EntityHolder<T extends Entity & AnimatedEntity> extends Ab
         super.onDataLoaded();
     }
 
+    @Override
+    protected void onTick() {
+        super.onTick();
+        this.checkRotation();
+    }
+
+    @Override
+    protected void updateMolangQueries(MolangContext context) {
+        Vec3 movement = this.parent.getDeltaMovement();
+        context.setQuery(MolangContext.LIFE_TIME, this.parent.tickCount / 20F);
+        // speeds are in blocks per second
+        context.setQuery(MolangContext.GROUND_SPEED, (float) movement.horizontalDistance() * 20);
+        context.setQuery(MolangContext.VERTICAL_SPEED, (float) movement.y * 20);
+        context.setQuery(MolangContext.BODY_Y_ROTATION, this.parent.getYRot());
+        context.setQuery(MolangContext.IS_ON_GROUND, this.parent.onGround());
+        context.setQuery(MolangContext.IS_IN_WATER, this.parent.isInWater());
+    }
+
+    /**
+     * Marks the bones that depend on the rotation of the parent entity as dirty, if the rotation changed.
+     */
+    protected void checkRotation() {
+        float yRot = this.parent.getYRot();
+        float xRot = this.parent.getXRot();
+        if (yRot != this.lastYRot || xRot != this.lastXRot) {
+            this.lastYRot = yRot;
+            this.lastXRot = xRot;
+            this.markAllBonesDirty();
+        }
+    }
+
     @Override
     protected boolean shouldSkipTick() {
         int parentTickCount = this.parent.tickCount;
@@ -107,6 +141,7 @@ public abstract class EntityHolder<T extends Entity & AnimatedEntity> extends Ab
     public void onDimensionsUpdated(EntityDimensions dimensions) {
         this.dimensions = dimensions;
         this.updateCullingBox();
+        this.markAllBonesDirty();
     }
 
     @Override
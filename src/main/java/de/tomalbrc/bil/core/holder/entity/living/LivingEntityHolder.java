@@ -1,6 +1,7 @@
 package de.tomalbrc.bil.core.holder.entity.living;
 
 import de.tomalbrc.bil.api.AnimatedEntity;
+import de.tomalbrc.bil.core.component.MolangContext;
 import de.tomalbrc.bil.core.element.CollisionElement;
 import de.tomalbrc.bil.core.holder.entity.EntityHolder;
 import de.tomalbrc.bil.core.holder.wrapper.Bone;
@@ -38,6 +39,8 @@ public class LivingEntityHolder<T extends LivingEntity & AnimatedEntity> extends
     protected final CollisionElement collisionElement;
     protected float deathAngle;
     protected float entityScale = 1F;
+    protected float lastHeadYaw = Float.NaN;
+    protected float lastHeadPitch = Float.NaN;
 
     public LivingEntityHolder(T parent, Model model) {
         super(parent, model);
@@ -49,6 +52,43 @@ public class LivingEntityHolder<T extends LivingEntity & AnimatedEntity> extends
         this.addElement(this.collisionElement);
     }
 
+    @Override
+    protected void checkRotation() {
+        float yBodyRot = this.parent.yBodyRot;
+        if (this.parent.deathTime > 0 || yBodyRot != this.lastYRot) {
+            this.lastYRot = yBodyRot;
+            this.markAllBonesDirty();
+        }
+
+        float headYaw = this.getHeadYaw();
+        float headPitch = this.getHeadPitch();
+        if (headYaw != this.lastHeadYaw || headPitch != this.lastHeadPitch) {
+            this.lastHeadYaw = headYaw;
+            this.lastHeadPitch = headPitch;
+            for (Bone bone : this.bones) {
+                if (bone.isHead()) {
+                    this.markBoneDirty(bone.node().index());
+                }
+            }
+        }
+    }
+
+    protected float getHeadYaw() {
+        return Mth.rotLerp(0.5f, this.parent.yHeadRotO - this.parent.yBodyRotO, this.parent.yHeadRot - this.parent.yBodyRot);
+    }
+
+    protected float getHeadPitch() {
+        return Mth.lerp(0.5f, this.parent.xRotO, this.parent.getXRot());
+    }
+
+    @Override
+    protected void updateMolangQueries(MolangContext context) {
+        super.updateMolangQueries(context);
+        context.setQuery(MolangContext.BODY_Y_ROTATION, this.parent.yBodyRot);
+        context.setQuery(MolangContext.HEALTH, this.parent.getHealth());
+        context.setQuery(MolangContext.MAX_HEALTH, this.parent.getMaxHealth());
+    }
+
     @Override
     protected void onAsyncTick() {
         if (this.parent.deathTime > 0) {
@@ -80,22 +120,36 @@ public class LivingEntityHolder<T extends LivingEntity & AnimatedEntity> extends
         }
     }
 
+    @Override
+    protected boolean canCacheTransform(DisplayWrapper<?> display) {
+        return this.entityScale == 1F && this.parent.deathTime <= 0 && !display.isHead();
+    }
+
+    @Override
+    protected float getTranslationOffsetY() {
+        return this.dimensions.height - 0.01f;
+    }
+
     @Override
     protected void applyPose(Pose pose, DisplayWrapper<?> display) {
-        Vector3f translation = pose.translation();
+        if (this.applyCachedTransform(pose, display)) {
+            return;
+        }
+
+        Vector3f translation = this.translationBuffer.set(pose.readOnlyTranslation());
         boolean isHead = display.isHead();
         boolean isDead = this.parent.deathTime > 0;
 
         if (isHead || isDead) {
-            Quaternionf bodyRotation = new Quaternionf();
+            Quaternionf bodyRotation = this.rotationBuffer.identity();
             if (isDead) {
                 bodyRotation.rotateZ(-this.deathAngle * Mth.HALF_PI);
                 translation.rotate(bodyRotation);
             }
 
             if (isHead) {
-                bodyRotation.rotateY(Mth.DEG_TO_RAD * -Mth.rotLerp(0.5f, this.parent.yHeadRotO - this.parent.yBodyRotO, this.parent.yHeadRot - this.parent.yBodyRot));
-                bodyRotation.rotateX(Mth.DEG_TO_RAD * Mth.lerp(0.5f, this.parent.xRotO, this.parent.getXRot()));
+                bodyRotation.rotateY(Mth.DEG_TO_RAD * -this.getHeadYaw());
+                bodyRotation.rotateX(Mth.DEG_TO_RAD * this.getHeadPitch());
             }
 
             display.element().setLeftRotation(bodyRotation.mul(pose.readOnlyLeftRotation()));
@@ -105,7 +159,7 @@ public class LivingEntityHolder<T extends LivingEntity & AnimatedEntity> extends
 
         if (this.entityScale != 1F) {
             translation.mul(this.entityScale);
-            display.element().setScale(pose.scale().mul(this.entityScale));
+            display.element().setScale(this.scaleBuffer.set(pose.readOnlyScale()).mul(this.entityScale));
         } else {
             display.element().setScale(pose.readOnlyScale());
         }
@@ -53,19 +53,33 @@ public class InteractableEntityHolder<T extends Entity & AnimatedEntity> extends
         }
     }
 
+    @Override
+    protected boolean canCacheTransform(DisplayWrapper<?> display) {
+        return this.scale == 1F;
+    }
+
+    @Override
+    protected float getTranslationOffsetY() {
+        return this.dimensions.height - 0.01f;
+    }
+
     @Override
     protected void applyPose(Pose pose, DisplayWrapper<?> display) {
-        Vector3f translation = pose.translation();
+        if (this.applyCachedTransform(pose, display)) {
+            return;
+        }
+
+        Vector3f translation = this.translationBuffer.set(pose.readOnlyTranslation());
         if (this.scale != 1F) {
             translation.mul(this.scale);
-            display.element().setScale(pose.scale().mul(this.scale));
+            display.element().setScale(this.scaleBuffer.set(pose.readOnlyScale()).mul(this.scale));
         } else {
             display.element().setScale(pose.readOnlyScale());
         }
 
         display.element().setTranslation(translation.sub(0, this.dimensions.height - 0.01f, 0));
-        display.element().setLeftRotation(pose.leftRotation());
-        display.element().setRightRotation(pose.rightRotation());
+        display.element().setLeftRotation(pose.readOnlyLeftRotation());
+        display.element().setRightRotation(pose.readOnlyRightRotation());
 
         display.element().startInterpolation();
     }
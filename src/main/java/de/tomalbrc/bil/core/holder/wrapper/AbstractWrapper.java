@@ -9,6 +9,7 @@ public abstract class AbstractWrapper {
     private final Pose defaultPose;
     protected Animation lastAnimation;
     protected Pose lastPose;
+    protected int lastPoseIndex = -1;
 
     public AbstractWrapper(Node node, Pose defaultPose) {
         this.node = node;
@@ -36,8 +37,20 @@ public abstract class AbstractWrapper {
         return this.lastPose;
     }
 
+    /**
+     * Returns the index of the last pose in the pose track of the last animation, or -1 if unknown.
+     */
+    public int getLastPoseIndex() {
+        return this.lastPoseIndex;
+    }
+
     public void setLastPose(Pose pose, Animation animation) {
+        this.setLastPose(pose, animation, -1);
+    }
+
+    public void setLastPose(Pose pose, Animation animation, int poseIndex) {
         this.lastAnimation = animation;
         this.lastPose = pose;
+        this.lastPoseIndex = poseIndex;
     }
 }
@@ -2,14 +2,21 @@ package de.tomalbrc.bil.core.holder.wrapper;
 
 import de.tomalbrc.bil.core.model.Node;
 import de.tomalbrc.bil.core.model.Pose;
+import de.tomalbrc.bil.core.model.TransformData;
 import eu.pb4.polymer.virtualentity.api.elements.ItemDisplayElement;
+import eu.pb4.polymer.virtualentity.api.tracker.DataTrackerLike;
 import eu.pb4.polymer.virtualentity.api.tracker.DisplayTrackedData;
 import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.Nullable;
 
 public class Bone extends DisplayWrapper<ItemDisplayElement> {
     private final ItemStack item;
     private boolean invisible;
 
+    // Transform data that was sent directly, bypassing the data tracker of the element.
+    @Nullable
+    private TransformData sentTransformData;
+
     public static Bone of(ItemDisplayElement element, Node node, Pose defaultPose, boolean isHead) {
         return new Bone(element, node, defaultPose, isHead);
     }
@@ -52,6 +59,31 @@ public class Bone extends DisplayWrapper<ItemDisplayElement> {
         }
     }
 
+    @Nullable
+    public TransformData getSentTransformData() {
+        return this.sentTransformData;
+    }
+
+    public void setSentTransformData(@Nullable TransformData transformData) {
+        this.sentTransformData = transformData;
+    }
+
+    /**
+     * Marks the transform of the data tracker as dirty after transform data was sent directly,
+     * so that the next tracked update is sent even if it matches the outdated tracked values.
+     */
+    public void invalidateSentTransform() {
+        if (this.sentTransformData != null) {
+            this.sentTransformData = null;
+
+            DataTrackerLike tracker = this.element().getDataTracker();
+            tracker.set(DisplayTrackedData.TRANSLATION, tracker.get(DisplayTrackedData.TRANSLATION), true);
+            tracker.set(DisplayTrackedData.SCALE, tracker.get(DisplayTrackedData.SCALE), true);
+            tracker.set(DisplayTrackedData.LEFT_ROTATION, tracker.get(DisplayTrackedData.LEFT_ROTATION), true);
+            tracker.set(DisplayTrackedData.RIGHT_ROTATION, tracker.get(DisplayTrackedData.RIGHT_ROTATION), true);
+        }
+    }
+
     private void setTrackedItem(ItemStack item) {
         this.element().getDataTracker().set(DisplayTrackedData.Item.ITEM, item, true);
     }
@@ -1,24 +1,87 @@
 package de.tomalbrc.bil.core.model;
 
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.UUID;
 
+/**
+ * Baked animation.
+ * <p>
+ * Poses are stored as one packed {@link PoseTrack} per bone, indexed by {@link Node#index()}.
+ * Bones with live Molang channels have a {@link MolangTrack} instead, which is evaluated while the animation plays.
+ */
 public record Animation(
         Frame[] frames,
+        PoseTrack[] poseTracks,
         int startDelay,
         int loopDelay,
 
         int duration,
         LoopMode loopMode,
         ReferenceOpenHashSet<UUID> affectedBones,
-        boolean affectedBonesIsAWhitelist
+        boolean affectedBonesIsAWhitelist,
+        MolangTrack[] molangTracks
 ) {
+    private static final MolangTrack[] NO_MOLANG_TRACKS = new MolangTrack[0];
+
+    public Animation(Frame[] frames, PoseTrack[] poseTracks, int startDelay, int loopDelay, int duration, LoopMode loopMode, ReferenceOpenHashSet<UUID> affectedBones, boolean affectedBonesIsAWhitelist) {
+        this(frames, poseTracks, startDelay, loopDelay, duration, loopMode, affectedBones, affectedBonesIsAWhitelist, NO_MOLANG_TRACKS);
+    }
 
     public boolean isAffected(UUID boneUuid) {
         return this.affectedBonesIsAWhitelist == this.affectedBones.contains(boneUuid);
     }
 
+    /**
+     * Returns the pose track of the bone with the given index, or null if this animation never animates it.
+     */
+    @Nullable
+    public PoseTrack poseTrack(int boneIndex) {
+        return boneIndex < this.poseTracks.length ? this.poseTracks[boneIndex] : null;
+    }
+
+    /**
+     * Returns the Molang track of the bone with the given index, or null if the bone is baked or not animated.
+     */
+    @Nullable
+    public MolangTrack molangTrack(int boneIndex) {
+        return boneIndex < this.molangTracks.length ? this.molangTracks[boneIndex] : null;
+    }
+
+    public boolean hasMolangTracks() {
+        return this.molangTracks.length > 0;
+    }
+
+    /**
+     * Returns a new map of the poses of all animated bones at the given frame, keyed by bone uuid.
+     * <p>
+     * This exists for compatibility, use {@link #poseTrack(int)} when possible.
+     */
+    public Reference2ObjectOpenHashMap<UUID, Pose> poses(int frameIndex) {
+        Reference2ObjectOpenHashMap<UUID, Pose> poses = new Reference2ObjectOpenHashMap<>();
+        for (PoseTrack track : this.poseTracks) {
+            if (track != null && track.hasPose(frameIndex)) {
+                poses.put(track.uuid(), track.get(frameIndex));
+            }
+        }
+        return poses;
+    }
+
+    /**
+     * Returns the approximate heap size of the baked poses of this animation in bytes.
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (PoseTrack track : this.poseTracks) {
+            if (track != null) {
+                size += track.sizeInBytes();
+            }
+        }
+        return size;
+    }
+
     public enum LoopMode {
         once, hold, loop
     }
@@ -11,11 +11,20 @@ import net.minecraft.sounds.SoundSource;
 import net.minecraft.world.entity.Entity;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
+/**
+ * @param poses Poses of all animated bones at this frame, keyed by bone uuid. Kept for compatibility, the map is a
+ *              view of the pose tracks of the animation that unpacks new poses whenever it is read. Use
+ *              {@link Animation#poseTrack(int)} instead.
+ */
 public record Frame(
         float time,
-        Reference2ObjectOpenHashMap<UUID, Pose> poses,
+        @Deprecated Map<UUID, Pose> poses,
 
         @Nullable Variant variant,
         @Nullable Commands commands,
@@ -68,6 +77,49 @@ public record Frame(
         return true;
     }
 
+    /**
+     * Returns a read-only view of the poses of the given frame, for the {@link #poses()} of a frame.
+     */
+    public static Map<UUID, Pose> poses(PoseTrack[] tracks, int frameIndex) {
+        return new PoseView(tracks, frameIndex);
+    }
+
+    private static class PoseView extends AbstractMap<UUID, Pose> {
+        private final PoseTrack[] tracks;
+        private final int frameIndex;
+
+        private PoseView(PoseTrack[] tracks, int frameIndex) {
+            this.tracks = tracks;
+            this.frameIndex = frameIndex;
+        }
+
+        @Override
+        public Pose get(Object key) {
+            for (PoseTrack track : this.tracks) {
+                if (track != null && track.uuid().equals(key)) {
+                    return track.get(this.frameIndex);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<UUID, Pose>> entrySet() {
+            Reference2ObjectOpenHashMap<UUID, Pose> poses = new Reference2ObjectOpenHashMap<>();
+            for (PoseTrack track : this.tracks) {
+                if (track != null && track.hasPose(this.frameIndex)) {
+                    poses.put(track.uuid(), track.get(this.frameIndex));
+                }
+            }
+            return Collections.unmodifiableMap(poses).entrySet();
+        }
+    }
+
     public record Variant(
             UUID uuid,
             @Nullable ParsedCommand[] conditions
@@ -0,0 +1,87 @@
+package de.tomalbrc.bil.core.model;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Poses of animation frames that were resolved during the current server tick, shared by all holders.
+ * <p>
+ * Holders playing the same animation at the same frame use the same pose instances, instead of each
+ * unpacking the pose tracks themselves. Poses are only unpacked for the bones that a holder actually updates.
+ * The returned poses are never modified, so holders may keep them after the cache has been cleared at the end of the tick.
+ * <p>
+ * Entries are only keyed by animation and frame, since the poses don't depend on the holder. The scale of a holder
+ * is applied when a pose is sent, and its color is set on the bone items, not the poses. Holders at scale 1 also share
+ * the encoded entity data of a pose through {@link PoseTrack#getTransformData}, other scales are encoded per holder.
+ */
+public final class FramePoseCache {
+    private static final ConcurrentHashMap<Key, FramePoses> CACHE = new ConcurrentHashMap<>();
+
+    private FramePoseCache() {
+    }
+
+    /**
+     * Returns the poses of the given frame, which are unpacked per bone when they are first requested.
+     */
+    public static FramePoses get(Animation animation, int frameIndex) {
+        return CACHE.computeIfAbsent(new Key(animation, frameIndex), key -> new FramePoses(key.animation, key.frameIndex));
+    }
+
+    /**
+     * Called on the main thread once all async ticks of the server tick are done.
+     */
+    public static void clear() {
+        if (!CACHE.isEmpty()) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Poses of all bones of an animation frame, indexed by {@link Node#index()}.
+     */
+    public static final class FramePoses {
+        private final Animation animation;
+        private final int frameIndex;
+        private final AtomicReferenceArray<Pose> poses;
+
+        private FramePoses(Animation animation, int frameIndex) {
+            this.animation = animation;
+            this.frameIndex = frameIndex;
+            this.poses = new AtomicReferenceArray<>(animation.poseTracks().length);
+        }
+
+        /**
+         * Returns the pose of the bone at this frame, or null if the bone has no pose at that frame.
+         */
+        @Nullable
+        public Pose get(int boneIndex) {
+            Pose pose = this.poses.get(boneIndex);
+            if (pose == null) {
+                PoseTrack track = this.animation.poseTrack(boneIndex);
+                if (track == null || !track.hasPose(this.frameIndex)) {
+                    return null;
+                }
+
+                // Holders on other threads may unpack the same pose at the same time, all of them use the first one stored
+                Pose resolved = track.get(this.frameIndex);
+                pose = this.poses.compareAndSet(boneIndex, null, resolved) ? resolved : this.poses.get(boneIndex);
+            }
+            return pose;
+        }
+    }
+
+    private record Key(Animation animation, int frameIndex) {
+        // Animations are compared by identity, the record equality would compare all of their contents.
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && this.animation == key.animation && this.frameIndex == key.frameIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.animation) * 31 + this.frameIndex;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package de.tomalbrc.bil.core.model;
+
+/**
+ * Update rate and distance based level of detail settings of a model.
+ * <p>
+ * Models update their bones every {@code updateInterval} ticks. When this is more than one tick, the
+ * animation is sampled ahead and interpolated over the whole interval, so it looks nearly the same.
+ * Models further away than {@code farDistance} from their nearest watching player only update every
+ * {@code farUpdateInterval} ticks, with a longer interpolation to keep them smooth. Models further away
+ * than {@code freezeDistance} stop updating their bones and stay on their current pose.
+ *
+ * @param updateInterval    Number of ticks between updates of near models.
+ * @param farDistance       Distance in blocks after which the model updates less often, 0 or less disables it.
+ * @param freezeDistance    Distance in blocks after which the model stops updating, 0 or less disables it.
+ * @param farUpdateInterval Number of ticks between updates of far models.
+ */
+public record LevelOfDetail(int updateInterval, float farDistance, float freezeDistance, int farUpdateInterval) {
+    public static final LevelOfDetail DISABLED = new LevelOfDetail(1, 0, 0, 1);
+
+    public Level levelAt(double distanceSqr) {
+        if (this.freezeDistance > 0 && distanceSqr >= this.freezeDistance * this.freezeDistance) {
+            return Level.FROZEN;
+        }
+        if (this.farDistance > 0 && distanceSqr >= this.farDistance * this.farDistance) {
+            return Level.FAR;
+        }
+        return Level.NEAR;
+    }
+
+    public int updateInterval(Level level) {
+        int interval = Math.max(1, this.updateInterval);
+        return level == Level.FAR ? Math.max(interval, this.farUpdateInterval) : interval;
+    }
+
+    public LevelOfDetail withUpdateInterval(int updateInterval) {
+        return new LevelOfDetail(updateInterval, this.farDistance, this.freezeDistance, this.farUpdateInterval);
+    }
+
+    public enum Level {
+        NEAR,
+        FAR,
+        FROZEN
+    }
+}
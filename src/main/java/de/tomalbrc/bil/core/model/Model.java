@@ -15,5 +15,17 @@ public record Model(Object2ObjectOpenHashMap<UUID, Node> nodeMap,
 
                     Reference2ObjectOpenHashMap<UUID, Variant> variants,
                     Object2ObjectOpenHashMap<String, Animation> animations,
-                    @Nullable Vec2 size) {
+                    @Nullable Vec2 size,
+                    @Nullable LevelOfDetail levelOfDetail) {
+
+    public Model(Object2ObjectOpenHashMap<UUID, Node> nodeMap, Reference2ObjectOpenHashMap<UUID, Pose> defaultPose, Reference2ObjectOpenHashMap<UUID, Variant> variants, Object2ObjectOpenHashMap<String, Animation> animations, @Nullable Vec2 size) {
+        this(nodeMap, defaultPose, variants, animations, size, null);
+    }
+
+    /**
+     * Returns a copy of this model that uses the given level of detail settings instead of the global ones.
+     */
+    public Model withLevelOfDetail(@Nullable LevelOfDetail levelOfDetail) {
+        return new Model(this.nodeMap, this.defaultPose, this.variants, this.animations, this.size, levelOfDetail);
+    }
 }
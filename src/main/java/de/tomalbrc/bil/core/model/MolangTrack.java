@@ -0,0 +1,108 @@
+package de.tomalbrc.bil.core.model;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import net.minecraft.util.Mth;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Compiled Molang channels of a single bone of an animation, evaluated while the animation plays instead of being baked.
+ * <p>
+ * Every channel holds one expression per axis, or null if the animation doesn't change it. The expressions are
+ * evaluated in the environment of the animation component, so they can use entity queries.
+ */
+public final class MolangTrack {
+    private final int parentIndex;
+    @Nullable
+    private final Matrix4fc parentTransform;
+    private final Vector3fc origin;
+    private final Quaternionfc rotation;
+    private final float scale;
+    private final boolean visible;
+
+    @Nullable
+    private final MolangExpression[] positionChannel;
+    @Nullable
+    private final MolangExpression[] rotationChannel;
+    @Nullable
+    private final MolangExpression[] scaleChannel;
+
+    /**
+     * @param parentIndex     Node index of the parent bone if it has a track in the same animation, or -1.
+     * @param parentTransform Transform of the parent bone if it has no track, which means it never moves.
+     * @param visible         Whether the bone has a display, bones without one are only evaluated for their children.
+     */
+    public MolangTrack(int parentIndex, @Nullable Matrix4fc parentTransform, Vector3fc origin, Quaternionfc rotation, float scale, boolean visible, @Nullable MolangExpression[] positionChannel, @Nullable MolangExpression[] rotationChannel, @Nullable MolangExpression[] scaleChannel) {
+        this.parentIndex = parentIndex;
+        this.parentTransform = parentTransform;
+        this.origin = origin;
+        this.rotation = rotation;
+        this.scale = scale;
+        this.visible = visible;
+        this.positionChannel = positionChannel;
+        this.rotationChannel = rotationChannel;
+        this.scaleChannel = scaleChannel;
+    }
+
+    public int parentIndex() {
+        return this.parentIndex;
+    }
+
+    public boolean visible() {
+        return this.visible;
+    }
+
+    /**
+     * Evaluates the channels and writes the transform of the bone into dest, starting from the transform of its parent.
+     * Tracks of parents have to be evaluated first. The scale of the bone itself is not applied to dest, so that
+     * children don't inherit it.
+     */
+    public Matrix4f evaluate(MolangEnvironment environment, Matrix4f[] transforms, Matrix4f dest, Vector3f vector, Quaternionf quaternion) throws MolangRuntimeException {
+        if (this.parentIndex >= 0) {
+            dest.set(transforms[this.parentIndex]);
+        } else if (this.parentTransform != null) {
+            dest.set(this.parentTransform);
+        } else {
+            dest.rotationY(Mth.PI);
+        }
+
+        evaluate(this.positionChannel, environment, vector, 0);
+        dest.translate(vector.div(16).add(this.origin));
+
+        evaluate(this.rotationChannel, environment, vector, 0);
+        // same conversion as baked rotations, blockbench uses a different handedness for x and y
+        quaternion.rotationZ(Mth.DEG_TO_RAD * vector.z)
+                .rotateY(Mth.DEG_TO_RAD * -vector.y)
+                .rotateX(Mth.DEG_TO_RAD * -vector.x);
+        dest.rotate(this.rotation.mul(quaternion, quaternion));
+
+        evaluate(this.scaleChannel, environment, vector, 1);
+        return dest.scale(vector);
+    }
+
+    /**
+     * Returns the pose of the bone for a transform written by {@link #evaluate}.
+     */
+    public Pose pose(Matrix4f transform, Matrix4f buffer) {
+        return Pose.of(buffer.set(transform).scale(this.scale));
+    }
+
+    private static void evaluate(@Nullable MolangExpression[] channel, MolangEnvironment environment, Vector3f dest, float defaultValue) throws MolangRuntimeException {
+        if (channel == null) {
+            dest.set(defaultValue);
+        } else {
+            dest.set(
+                    channel[0] != null ? channel[0].get(environment) : defaultValue,
+                    channel[1] != null ? channel[1].get(environment) : defaultValue,
+                    channel[2] != null ? channel[2].get(environment) : defaultValue
+            );
+        }
+    }
+}
@@ -13,6 +13,7 @@ public record Node(
 
         String name,
         UUID uuid,
+        int index,
         ItemDisplayElement display,
         PolymerModelData modelData
 ) {
@@ -34,6 +35,13 @@ public record Node(
             this.globalTransform = new Matrix4f().translate(origin).rotate(rotation);
         }
 
+        public Transform(Vector3f origin, Quaternionf rotation, float scale, Matrix4f globalTransform) {
+            this.origin = origin;
+            this.rotation = rotation;
+            this.scale = scale;
+            this.globalTransform = globalTransform;
+        }
+
         public Transform mul(Transform other) {
             this.globalTransform = other.globalTransform.mul(this.globalTransform, new Matrix4f());
             return this;
@@ -27,6 +27,36 @@ public record Pose(
         return new Pose(translation, scale, leftRotation, rightRotation);
     }
 
+    public static Pose identity() {
+        return new Pose(new Vector3f(), new Vector3f(1), new Quaternionf(), new Quaternionf());
+    }
+
+    void write(float[] data, int offset) {
+        data[offset] = this.translation.x;
+        data[offset + 1] = this.translation.y;
+        data[offset + 2] = this.translation.z;
+        data[offset + 3] = this.scale.x;
+        data[offset + 4] = this.scale.y;
+        data[offset + 5] = this.scale.z;
+        data[offset + 6] = this.leftRotation.x;
+        data[offset + 7] = this.leftRotation.y;
+        data[offset + 8] = this.leftRotation.z;
+        data[offset + 9] = this.leftRotation.w;
+        data[offset + 10] = this.rightRotation.x;
+        data[offset + 11] = this.rightRotation.y;
+        data[offset + 12] = this.rightRotation.z;
+        data[offset + 13] = this.rightRotation.w;
+    }
+
+    static Pose read(float[] data, int offset) {
+        return new Pose(
+                new Vector3f(data[offset], data[offset + 1], data[offset + 2]),
+                new Vector3f(data[offset + 3], data[offset + 4], data[offset + 5]),
+                new Quaternionf(data[offset + 6], data[offset + 7], data[offset + 8], data[offset + 9]),
+                new Quaternionf(data[offset + 10], data[offset + 11], data[offset + 12], data[offset + 13])
+        );
+    }
+
     public Vector3fc readOnlyTranslation() {
         return this.translation;
     }
@@ -0,0 +1,209 @@
+package de.tomalbrc.bil.core.model;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Packed pose storage for a single bone of an animation.
+ * <p>
+ * Every stored pose takes up {@link #STRIDE} floats in one array: translation, scale, left rotation and right rotation.
+ * Poses are only unpacked into {@link Pose} instances when they are requested, so no JOML objects are kept per frame.
+ * <p>
+ * Only poses that differ from the previous stored pose are kept. Each frame maps to the index of the
+ * most recent stored pose, so a frame that doesn't change the bone shares the pose of the frame before it.
+ */
+public final class PoseTrack {
+    public static final int STRIDE = 14;
+
+    // Rough retained size of a Pose record with its two vectors and two quaternions.
+    public static final int POSE_OBJECT_SIZE = 144;
+
+    // Translation offsets cached per stored pose, holders of different entity sizes use different offsets.
+    private static final int MAX_CACHED_OFFSETS = 4;
+
+    private final UUID uuid;
+    private final float[] data;
+    private final int[] poseIndices;
+
+    // Encoded display data of the stored poses, one entry per translation offset, built when a pose is first sent.
+    private final AtomicReferenceArray<TransformData[]> transformData;
+
+    private PoseTrack(UUID uuid, float[] data, int[] poseIndices) {
+        this.uuid = uuid;
+        this.data = data;
+        this.poseIndices = poseIndices;
+        this.transformData = new AtomicReferenceArray<>(this.poseCount());
+    }
+
+    /**
+     * Packs the given poses, one per frame, dropping poses that are within epsilon of the previous pose.
+     * Returns null if none of the frames has a pose.
+     */
+    @Nullable
+    public static PoseTrack of(UUID uuid, Pose[] poses, float epsilon) {
+        FloatArrayList data = new FloatArrayList();
+        int[] poseIndices = new int[poses.length];
+        float[] current = new float[STRIDE];
+        float[] previous = null;
+
+        for (int i = 0; i < poses.length; i++) {
+            Pose pose = poses[i];
+            if (pose != null) {
+                pose.write(current, 0);
+                if (previous == null || !equals(previous, current, epsilon)) {
+                    data.addElements(data.size(), current);
+                    previous = current.clone();
+                }
+            }
+            poseIndices[i] = previous == null ? -1 : data.size() / STRIDE - 1;
+        }
+
+        return data.isEmpty() ? null : new PoseTrack(uuid, data.toFloatArray(), poseIndices);
+    }
+
+    /**
+     * Reads a track written by {@link #write(DataOutput)}.
+     */
+    public static PoseTrack read(UUID uuid, ByteBuffer buffer) {
+        int[] poseIndices = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(poseIndices);
+        buffer.position(buffer.position() + poseIndices.length * 4);
+
+        float[] data = new float[buffer.getInt()];
+        buffer.asFloatBuffer().get(data);
+        buffer.position(buffer.position() + data.length * 4);
+
+        return new PoseTrack(uuid, data, poseIndices);
+    }
+
+    /**
+     * Writes the packed poses of this track, without its uuid.
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(this.poseIndices.length);
+        for (int poseIndex : this.poseIndices) {
+            output.writeInt(poseIndex);
+        }
+
+        output.writeInt(this.data.length);
+        for (float value : this.data) {
+            output.writeFloat(value);
+        }
+    }
+
+    private static boolean equals(float[] a, float[] b, float epsilon) {
+        for (int i = 0; i < STRIDE; i++) {
+            if (Math.abs(a[i] - b[i]) > epsilon) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public UUID uuid() {
+        return this.uuid;
+    }
+
+    public int frameCount() {
+        return this.poseIndices.length;
+    }
+
+    public int poseCount() {
+        return this.data.length / STRIDE;
+    }
+
+    /**
+     * Returns the index of the stored pose used by the given frame, or -1 if the bone has no pose yet at that frame.
+     */
+    public int poseIndex(int frame) {
+        return this.poseIndices[frame];
+    }
+
+    public boolean hasPose(int frame) {
+        return this.poseIndices[frame] >= 0;
+    }
+
+    /**
+     * Returns whether the pose of the bone changes at the given frame, compared to the frame before it.
+     */
+    public boolean changesAt(int frame) {
+        int index = this.poseIndices[frame];
+        return index >= 0 && (frame == 0 || index != this.poseIndices[frame - 1]);
+    }
+
+    /**
+     * Returns a new pose with the values of the stored pose with the given index.
+     */
+    public Pose getPose(int poseIndex) {
+        return Pose.read(this.data, poseIndex * STRIDE);
+    }
+
+    /**
+     * Returns a new pose for the given frame, or null if the frame has no pose.
+     */
+    @Nullable
+    public Pose get(int frame) {
+        return this.hasPose(frame) ? this.getPose(this.poseIndices[frame]) : null;
+    }
+
+    /**
+     * Returns the encoded display data of the stored pose with the given index, for the given translation offset.
+     * The data is cached per offset, so that bones playing the same pose send the same data values without diffing them again.
+     * Once more than {@link #MAX_CACHED_OFFSETS} offsets were used for a pose, the oldest one is replaced.
+     */
+    public TransformData getTransformData(int poseIndex, float offsetY) {
+        TransformData[] cached = this.transformData.get(poseIndex);
+        TransformData transformData = find(cached, offsetY);
+        if (transformData != null) {
+            return transformData;
+        }
+
+        transformData = TransformData.of(this.getPose(poseIndex), offsetY);
+        // Holders ticking on other threads may add offsets at the same time, retry until ours is stored or theirs is found
+        while (!this.transformData.compareAndSet(poseIndex, cached, with(cached, transformData))) {
+            cached = this.transformData.get(poseIndex);
+            TransformData other = find(cached, offsetY);
+            if (other != null) {
+                return other;
+            }
+        }
+        return transformData;
+    }
+
+    @Nullable
+    private static TransformData find(@Nullable TransformData[] cached, float offsetY) {
+        if (cached != null) {
+            for (TransformData transformData : cached) {
+                if (transformData.offsetY() == offsetY) {
+                    return transformData;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static TransformData[] with(@Nullable TransformData[] cached, TransformData transformData) {
+        if (cached == null) {
+            return new TransformData[]{transformData};
+        }
+
+        int kept = Math.min(cached.length, MAX_CACHED_OFFSETS - 1);
+        TransformData[] result = new TransformData[kept + 1];
+        System.arraycopy(cached, cached.length - kept, result, 0, kept);
+        result[kept] = transformData;
+        return result;
+    }
+
+    /**
+     * Returns the approximate heap size of this track in bytes.
+     */
+    public long sizeInBytes() {
+        return this.data.length * 4L + this.poseIndices.length * 4L;
+    }
+}
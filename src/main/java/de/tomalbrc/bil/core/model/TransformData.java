@@ -0,0 +1,25 @@
+package de.tomalbrc.bil.core.model;
+
+import eu.pb4.polymer.virtualentity.api.tracker.DisplayTrackedData;
+import net.minecraft.network.syncher.SynchedEntityData;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+
+import java.util.List;
+
+/**
+ * Display entity data values of a baked pose, ready to be sent in a {@link net.minecraft.network.protocol.game.ClientboundSetEntityDataPacket}.
+ * <p>
+ * The values include the start of a new interpolation and are built for a specific vertical offset of the translation.
+ */
+public record TransformData(float offsetY, List<SynchedEntityData.DataValue<?>> values) {
+    public static TransformData of(Pose pose, float offsetY) {
+        return new TransformData(offsetY, List.of(
+                SynchedEntityData.DataValue.create(DisplayTrackedData.TRANSLATION, new Vector3f(pose.readOnlyTranslation()).sub(0, offsetY, 0)),
+                SynchedEntityData.DataValue.create(DisplayTrackedData.SCALE, new Vector3f(pose.readOnlyScale())),
+                SynchedEntityData.DataValue.create(DisplayTrackedData.LEFT_ROTATION, new Quaternionf(pose.readOnlyLeftRotation())),
+                SynchedEntityData.DataValue.create(DisplayTrackedData.RIGHT_ROTATION, new Quaternionf(pose.readOnlyRightRotation())),
+                SynchedEntityData.DataValue.create(DisplayTrackedData.START_INTERPOLATION, 0)
+        ));
+    }
+}
@@ -3,16 +3,19 @@ package de.tomalbrc.bil.file.bbmodel;
 import com.google.gson.annotations.SerializedName;
 import de.tomalbrc.bil.BIL;
 import de.tomalbrc.bil.file.extra.BbVariablePlaceholders;
+import de.tomalbrc.bil.file.extra.MolangConstantFolder;
 import de.tomalbrc.bil.file.extra.interpolation.Interpolation;
 import gg.moonflower.molangcompiler.api.MolangEnvironment;
 import gg.moonflower.molangcompiler.api.MolangExpression;
 import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3f;
 
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 
 public class BbKeyframe implements Comparable {
     public Channel channel;
@@ -54,17 +57,26 @@ public class BbKeyframe implements Comparable {
     }
 
     public Vector3f getVector3f(int index, BbVariablePlaceholders placeholders, MolangEnvironment environment) throws MolangRuntimeException {
-        return new Vector3f(
-                this.dataPoints.get(index).get("x").getValue(placeholders, environment),
-                this.dataPoints.get(index).get("y").getValue(placeholders, environment),
-                this.dataPoints.get(index).get("z").getValue(placeholders, environment)
+        return this.getVector3f(index, placeholders, environment, new Vector3f());
+    }
+
+    /**
+     * Writes the value of the data point with the given index into dest and returns it.
+     */
+    public Vector3f getVector3f(int index, BbVariablePlaceholders placeholders, MolangEnvironment environment, Vector3f dest) throws MolangRuntimeException {
+        Map<String, DataPointValue> dataPoint = this.dataPoints.get(index);
+        return dest.set(
+                dataPoint.get("x").getValue(placeholders, environment),
+                dataPoint.get("y").getValue(placeholders, environment),
+                dataPoint.get("z").getValue(placeholders, environment)
         );
     }
 
     static public class DataPointValue {
         private float value;
-        private String stringValue;
-        private MolangExpression molangExpression;
+        // Volatile, so sampling threads see a value prepared by another thread. The value is written before them.
+        private volatile String stringValue;
+        private volatile MolangExpression molangExpression;
 
         public void setValue(float value) {
             this.value = value;
@@ -78,32 +90,97 @@ public class BbKeyframe implements Comparable {
             return this.stringValue;
         }
 
-        public float getValue(BbVariablePlaceholders placeholders, MolangEnvironment environment) throws MolangRuntimeException {
-            if (this.stringValue == null)
-                return this.value;
+        /**
+         * Returns whether this value is a plain number. Only valid after {@link #prepare(BbVariablePlaceholders)}.
+         */
+        public boolean isConstant() {
+            return this.stringValue == null && this.molangExpression == null;
+        }
 
-            if (this.stringValue.trim().length() <= 2) {
-                this.value = Float.parseFloat(this.stringValue.trim());
-                this.stringValue = null;
-                return this.value;
-            }
+        /**
+         * Returns the value in the given environment. The value has to be prepared first, either by
+         * {@link de.tomalbrc.bil.file.importer.MolangPrecompiler} or {@link #prepare(BbVariablePlaceholders)},
+         * preparing it here could race with other sampling threads.
+         *
+         * @throws IllegalStateException if the value wasn't prepared.
+         */
+        public float getValue(BbVariablePlaceholders placeholders, MolangEnvironment environment) throws MolangRuntimeException {
+            if (!this.isPrepared())
+                throw new IllegalStateException("Keyframe value '" + this.stringValue + "' was not prepared");
+            return this.molangExpression != null ? this.molangExpression.get(environment) : this.value;
+        }
 
-            // dirty hack, caching the molang expression for performance,
-            // would be better to post-process the expressions as string,
-            // for the placeholder substitution
-            if (this.molangExpression == null) {
-                String modifiedExpression = this.stringValue;
+        /**
+         * Parses or compiles the string value. Once prepared, the value can be read from multiple threads at once,
+         * including threads that didn't prepare it. Threads that prepare the same value concurrently wait for each other.
+         */
+        public void prepare(BbVariablePlaceholders placeholders) {
+            this.prepare(expression -> {
+                String modifiedExpression = expression;
                 if (placeholders != null)
-                    modifiedExpression = placeholders.substituteVariables(this.stringValue);
+                    modifiedExpression = placeholders.substituteVariables(expression);
 
                 try {
-                    this.molangExpression = BIL.COMPILER.compile(modifiedExpression);
+                    synchronized (BIL.COMPILER) {
+                        return BIL.COMPILER.compile(modifiedExpression);
+                    }
                 } catch(Exception e) {
                     throw new RuntimeException(e);
                 }
+            });
+        }
+
+        /**
+         * Folds the string value into a number if it is a constant expression, or compiles it with the given compiler.
+         */
+        public synchronized void prepare(Function<String, MolangExpression> compiler) {
+            if (this.isPrepared())
+                return;
+
+            String trimmed = this.stringValue.trim();
+            if (trimmed.isEmpty()) {
+                this.setConstant(0);
+                return;
+            }
+
+            Float constant = MolangConstantFolder.fold(trimmed);
+            if (constant != null) {
+                this.setConstant(constant);
+                return;
             }
 
-            return this.molangExpression.get(environment);
+            this.molangExpression = compiler.apply(this.stringValue);
+        }
+
+        /**
+         * Returns whether the value was parsed or compiled already.
+         */
+        public boolean isPrepared() {
+            return this.stringValue == null || this.molangExpression != null;
+        }
+
+        /**
+         * Returns the compiled expression of this value, or null if it is a plain number.
+         */
+        @Nullable
+        public MolangExpression getExpression() {
+            return this.molangExpression;
+        }
+
+        /**
+         * Replaces the value with a constant, for example a folded expression.
+         */
+        public void setConstant(float value) {
+            this.value = value;
+            this.stringValue = null;
+            this.molangExpression = null;
+        }
+
+        /**
+         * Sets the compiled expression of the string value.
+         */
+        public void setExpression(MolangExpression molangExpression) {
+            this.molangExpression = molangExpression;
         }
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package de.tomalbrc.bil.file.bbmodel;
 
 import com.google.gson.annotations.SerializedName;
 import de.tomalbrc.bil.file.extra.BbVariablePlaceholders;
+import de.tomalbrc.bil.json.UuidInterner;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.joml.Vector2i;
 
@@ -26,6 +27,9 @@ public class BbModel {
     @SerializedName("animation_variable_placeholders")
     public BbVariablePlaceholders animationVariablePlaceholders;
 
+    // UUIDs read for this model, not part of the file format
+    public transient UuidInterner uuids = new UuidInterner();
+
 
     public BbElement getElement(UUID uuid) {
         for (BbElement element: this.elements) {
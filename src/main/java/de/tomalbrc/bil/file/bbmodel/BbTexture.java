@@ -36,4 +36,7 @@ public class BbTexture {
     public boolean saved;
     public UUID uuid;
     public String source;
+
+    // Decoded image of the source, set instead of the source by the model reader
+    public transient byte[] data;
 }
@@ -48,6 +48,13 @@ public class BbResourcePackGenerator {
     }
 
     public static ResourceLocation makePart(BbModel model, String partName, List<BbElement> elements, List<BbTexture> textures) {
+        return makePart(model, partName, elements, textures, new Object2ObjectLinkedOpenHashMap<>());
+    }
+
+    /**
+     * Same as {@link #makePart(BbModel, String, List, List)}, but also puts the generated files into the given map.
+     */
+    public static ResourceLocation makePart(BbModel model, String partName, List<BbElement> elements, List<BbTexture> textures, Map<ResourceLocation, byte[]> assets) {
         String id = BbResourcePackGenerator.normalizedModelId(model);
 
         Map<String, ResourceLocation> textureMap = new Object2ObjectLinkedOpenHashMap<>();
@@ -58,17 +65,28 @@ public class BbResourcePackGenerator {
         GeneratedModel generatedModel = new GeneratedModel(textureMap, elements);
 
         ResourceLocation modelResource = new ResourceLocation(MODEL_DIR + id + "/" + partName + ".json");
-        RPUtil.add(modelResource, generatedModel.getBytes());
+        byte[] modelData = generatedModel.getBytes();
+        RPUtil.add(modelResource, modelData);
+        assets.put(modelResource, modelData);
 
         return new ResourceLocation("bil:item/" + id + "/" + partName);
     }
 
     public static void makeTextures(BbModel model, Collection<BbTexture> textures) {
+        makeTextures(model, textures, new Object2ObjectLinkedOpenHashMap<>());
+    }
+
+    /**
+     * Same as {@link #makeTextures(BbModel, Collection)}, but also puts the generated files into the given map.
+     */
+    public static void makeTextures(BbModel model, Collection<BbTexture> textures, Map<ResourceLocation, byte[]> assets) {
         String id = BbResourcePackGenerator.normalizedModelId(model);
 
         for (BbTexture texture: textures) {
-            byte[] texData = Base64.getDecoder().decode(texture.source.replace(BASE64_PNG_PREFIX, ""));
-            RPUtil.add(new ResourceLocation(TEXTURE_DIR + id + "/" + texture.name + ".png"), texData);
+            byte[] texData = texture.data != null ? texture.data : Base64.getDecoder().decode(texture.source.replace(BASE64_PNG_PREFIX, ""));
+            ResourceLocation location = new ResourceLocation(TEXTURE_DIR + id + "/" + texture.name + ".png");
+            RPUtil.add(location, texData);
+            assets.put(location, texData);
         }
     }
 
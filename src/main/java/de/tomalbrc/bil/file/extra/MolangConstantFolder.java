@@ -0,0 +1,224 @@
+package de.tomalbrc.bil.file.extra;
+
+import net.minecraft.util.Mth;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Evaluates Molang expressions that don't depend on queries or variables, like {@code 12.5}, {@code -90 * 2}
+ * or {@code math.sin(30) * 4}.
+ * <p>
+ * Supports number literals, {@code + - * /}, parentheses and the deterministic {@code math.*} functions.
+ * Anything else, like queries, variables, conditions or random functions, is left to the Molang compiler.
+ */
+public class MolangConstantFolder {
+    private final String expression;
+    private int position;
+
+    private MolangConstantFolder(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Returns the value of the given expression, or null if it isn't a constant expression.
+     */
+    @Nullable
+    public static Float fold(String expression) {
+        MolangConstantFolder folder = new MolangConstantFolder(expression.toLowerCase(Locale.ROOT));
+        try {
+            float value = folder.parseExpression();
+            folder.skipWhitespace();
+            // a single statement may end with a semicolon
+            if (folder.peek() == ';') {
+                folder.position++;
+                folder.skipWhitespace();
+            }
+            return folder.position == folder.expression.length() && Float.isFinite(value) ? value : null;
+        } catch (NotConstantException e) {
+            return null;
+        }
+    }
+
+    private float parseExpression() throws NotConstantException {
+        float value = this.parseTerm();
+        while (true) {
+            char operator = this.peekOperator();
+            if (operator == '+') {
+                this.position++;
+                value += this.parseTerm();
+            } else if (operator == '-') {
+                this.position++;
+                value -= this.parseTerm();
+            } else {
+                return value;
+            }
+        }
+    }
+
+    private float parseTerm() throws NotConstantException {
+        float value = this.parseUnary();
+        while (true) {
+            char operator = this.peekOperator();
+            if (operator == '*') {
+                this.position++;
+                value *= this.parseUnary();
+            } else if (operator == '/') {
+                this.position++;
+                float divisor = this.parseUnary();
+                // left to the compiler, which decides what a division by zero returns
+                if (divisor == 0) {
+                    throw new NotConstantException();
+                }
+                value /= divisor;
+            } else {
+                return value;
+            }
+        }
+    }
+
+    private float parseUnary() throws NotConstantException {
+        this.skipWhitespace();
+        char c = this.peek();
+        if (c == '-') {
+            this.position++;
+            return -this.parseUnary();
+        } else if (c == '+') {
+            this.position++;
+            return this.parseUnary();
+        }
+        return this.parsePrimary();
+    }
+
+    private float parsePrimary() throws NotConstantException {
+        this.skipWhitespace();
+        char c = this.peek();
+        if (c == '(') {
+            this.position++;
+            float value = this.parseExpression();
+            this.expect(')');
+            return value;
+        } else if (Character.isDigit(c) || c == '.') {
+            return this.parseNumber();
+        } else if (this.expression.startsWith("math.", this.position)) {
+            this.position += 5;
+            return this.parseFunction(this.parseName());
+        }
+        throw new NotConstantException();
+    }
+
+    private float parseNumber() throws NotConstantException {
+        int start = this.position;
+        while (this.position < this.expression.length() && (Character.isDigit(this.peek()) || this.peek() == '.')) {
+            this.position++;
+        }
+
+        try {
+            return Float.parseFloat(this.expression.substring(start, this.position));
+        } catch (NumberFormatException e) {
+            throw new NotConstantException();
+        }
+    }
+
+    private String parseName() {
+        int start = this.position;
+        while (this.position < this.expression.length() && (Character.isLetterOrDigit(this.peek()) || this.peek() == '_')) {
+            this.position++;
+        }
+        return this.expression.substring(start, this.position);
+    }
+
+    private float parseFunction(String name) throws NotConstantException {
+        if (name.equals("pi")) {
+            return Mth.PI;
+        }
+
+        float[] args = this.parseArguments();
+        // trigonometric functions use degrees in molang
+        return switch (name) {
+            case "abs" -> Math.abs(this.arg(args, 0, 1));
+            case "sin" -> (float) Math.sin(this.arg(args, 0, 1) * Mth.DEG_TO_RAD);
+            case "cos" -> (float) Math.cos(this.arg(args, 0, 1) * Mth.DEG_TO_RAD);
+            case "asin" -> (float) Math.asin(this.arg(args, 0, 1)) * Mth.RAD_TO_DEG;
+            case "acos" -> (float) Math.acos(this.arg(args, 0, 1)) * Mth.RAD_TO_DEG;
+            case "atan" -> (float) Math.atan(this.arg(args, 0, 1)) * Mth.RAD_TO_DEG;
+            case "atan2" -> (float) Math.atan2(this.arg(args, 0, 2), this.arg(args, 1, 2)) * Mth.RAD_TO_DEG;
+            case "sqrt" -> (float) Math.sqrt(this.arg(args, 0, 1));
+            case "exp" -> (float) Math.exp(this.arg(args, 0, 1));
+            case "ln" -> (float) Math.log(this.arg(args, 0, 1));
+            case "pow" -> (float) Math.pow(this.arg(args, 0, 2), this.arg(args, 1, 2));
+            case "floor" -> (float) Math.floor(this.arg(args, 0, 1));
+            case "ceil" -> (float) Math.ceil(this.arg(args, 0, 1));
+            case "round" -> Math.round(this.arg(args, 0, 1));
+            case "trunc" -> (int) this.arg(args, 0, 1);
+            case "min" -> Math.min(this.arg(args, 0, 2), this.arg(args, 1, 2));
+            case "max" -> Math.max(this.arg(args, 0, 2), this.arg(args, 1, 2));
+            case "mod" -> this.arg(args, 0, 2) % this.arg(args, 1, 2);
+            case "clamp" -> Mth.clamp(this.arg(args, 0, 3), this.arg(args, 1, 3), this.arg(args, 2, 3));
+            case "lerp" -> Mth.lerp(this.arg(args, 2, 3), this.arg(args, 0, 3), this.arg(args, 1, 3));
+            default -> throw new NotConstantException();
+        };
+    }
+
+    private float arg(float[] args, int index, int count) throws NotConstantException {
+        if (args.length != count) {
+            throw new NotConstantException();
+        }
+        return args[index];
+    }
+
+    private float[] parseArguments() throws NotConstantException {
+        this.expect('(');
+        float[] args = new float[3];
+        int count = 0;
+
+        this.skipWhitespace();
+        if (this.peek() != ')') {
+            while (true) {
+                if (count == args.length) {
+                    throw new NotConstantException();
+                }
+                args[count++] = this.parseExpression();
+
+                this.skipWhitespace();
+                if (this.peek() != ',') {
+                    break;
+                }
+                this.position++;
+            }
+        }
+
+        this.expect(')');
+        return Arrays.copyOf(args, count);
+    }
+
+    private void expect(char c) throws NotConstantException {
+        this.skipWhitespace();
+        if (this.peek() != c) {
+            throw new NotConstantException();
+        }
+        this.position++;
+    }
+
+    private char peekOperator() {
+        this.skipWhitespace();
+        return this.peek();
+    }
+
+    private char peek() {
+        return this.position < this.expression.length() ? this.expression.charAt(this.position) : 0;
+    }
+
+    private void skipWhitespace() {
+        while (this.position < this.expression.length() && Character.isWhitespace(this.expression.charAt(this.position))) {
+            this.position++;
+        }
+    }
+
+    private static class NotConstantException extends Exception {
+        private NotConstantException() {
+            super(null, null, false, false);
+        }
+    }
+}
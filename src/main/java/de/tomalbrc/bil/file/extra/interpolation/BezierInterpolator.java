@@ -1,9 +1,149 @@
 package de.tomalbrc.bil.file.extra.interpolation;
 
+import net.minecraft.util.Mth;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
 
+/**
+ * Blockbench bezier keyframes. Every axis of a segment is a cubic bezier curve through (time, value), with the
+ * control points given by the right handle of the keyframe before and the left handle of the keyframe after it.
+ * <p>
+ * The time curve of a segment only depends on the keyframe times and handle times, so it is set up once per keyframe
+ * pair as a {@link Segment}. Sampling then only inverts it, starting from a lookup table and refining with Newton steps.
+ */
 public class BezierInterpolator implements Interpolator {
+    // Handles Blockbench uses for keyframes that don't have their own
+    private static final Vector3fc DEFAULT_LEFT_TIME = new Vector3f(-0.1f);
+    private static final Vector3fc DEFAULT_RIGHT_TIME = new Vector3f(0.1f);
+    private static final Vector3fc DEFAULT_VALUE = new Vector3f();
+
+    // Without keyframes there are no handles, the curve eases in and out with flat handles at a third of the segment
+    private static final Segment UNIT_SEGMENT = segment(1, new Vector3f(1 / 3f), new Vector3f(-1 / 3f));
+
+    @Override
     public Vector3f interpolate(float t, Vector3f beforePlus, Vector3f before, Vector3f after, Vector3f afterPlus) {
-        throw new UnsupportedOperationException("Not implemented yet");
+        return this.interpolate(t, beforePlus, before, after, afterPlus, new Vector3f());
+    }
+
+    @Override
+    public Vector3f interpolate(float t, Vector3fc beforePlus, Vector3fc before, Vector3fc after, Vector3fc afterPlus, Vector3f dest) {
+        return UNIT_SEGMENT.interpolate(t, before, null, after, null, dest);
+    }
+
+    /**
+     * Sets up the time curves of a segment.
+     *
+     * @param duration  Time between the two keyframes, must be greater than zero.
+     * @param rightTime Right handle time of the keyframe before, relative to it.
+     * @param leftTime  Left handle time of the keyframe after, relative to it.
+     */
+    public static Segment segment(float duration, @Nullable Vector3fc rightTime, @Nullable Vector3fc leftTime) {
+        return new Segment(duration, rightTime != null ? rightTime : DEFAULT_RIGHT_TIME, leftTime != null ? leftTime : DEFAULT_LEFT_TIME);
+    }
+
+    /**
+     * Bezier curves between two keyframes, with the time curve of every axis prepared for sampling.
+     */
+    public static final class Segment {
+        private static final int LOOKUP_SIZE = 16;
+        private static final int NEWTON_STEPS = 3;
+        private static final float EPSILON = 1.0E-6f;
+
+        // Coefficients a, b and c of the normalized time curve x(s) = ((a * s + b) * s + c) * s, for every axis
+        private final float[] coefficients = new float[9];
+        // Curve parameters at evenly spaced normalized times, for every axis
+        private final float[] lookup = new float[3 * (LOOKUP_SIZE + 1)];
+
+        private Segment(float duration, Vector3fc rightTime, Vector3fc leftTime) {
+            for (int axis = 0; axis < 3; axis++) {
+                // handles are clamped to the segment like in Blockbench, which keeps the time curve monotonic
+                float p1 = Mth.clamp(rightTime.get(axis), 0, duration) / duration;
+                float p2 = 1 + Mth.clamp(leftTime.get(axis), -duration, 0) / duration;
+
+                this.coefficients[axis * 3] = 3 * p1 - 3 * p2 + 1;
+                this.coefficients[axis * 3 + 1] = -6 * p1 + 3 * p2;
+                this.coefficients[axis * 3 + 2] = 3 * p1;
+
+                for (int i = 0; i <= LOOKUP_SIZE; i++) {
+                    this.lookup[axis * (LOOKUP_SIZE + 1) + i] = this.bisect(axis, (float) i / LOOKUP_SIZE);
+                }
+            }
+        }
+
+        /**
+         * Writes the value at the given progress through the segment into dest.
+         *
+         * @param t          Progress between 0 and 1, relative to the keyframe times.
+         * @param rightValue Right handle value of the keyframe before, relative to its value.
+         * @param leftValue  Left handle value of the keyframe after, relative to its value.
+         */
+        public Vector3f interpolate(float t, Vector3fc before, @Nullable Vector3fc rightValue, Vector3fc after, @Nullable Vector3fc leftValue, Vector3f dest) {
+            if (rightValue == null) rightValue = DEFAULT_VALUE;
+            if (leftValue == null) leftValue = DEFAULT_VALUE;
+
+            float x = this.value(0, t, before.x(), rightValue.x(), after.x(), leftValue.x());
+            float y = this.value(1, t, before.y(), rightValue.y(), after.y(), leftValue.y());
+            float z = this.value(2, t, before.z(), rightValue.z(), after.z(), leftValue.z());
+            return dest.set(x, y, z);
+        }
+
+        private float value(int axis, float t, float before, float rightValue, float after, float leftValue) {
+            float s = this.parameter(axis, Mth.clamp(t, 0, 1));
+            float r = 1 - s;
+
+            float p0 = before;
+            float p1 = before + rightValue;
+            float p2 = after + leftValue;
+            float p3 = after;
+            return r * r * r * p0 + 3 * r * r * s * p1 + 3 * r * s * s * p2 + s * s * s * p3;
+        }
+
+        // curve parameter at which the time curve of the axis reaches the given normalized time
+        private float parameter(int axis, float t) {
+            float position = t * LOOKUP_SIZE;
+            int index = Math.min((int) position, LOOKUP_SIZE - 1);
+            int offset = axis * (LOOKUP_SIZE + 1) + index;
+            float s = Mth.lerp(position - index, this.lookup[offset], this.lookup[offset + 1]);
+
+            for (int i = 0; i < NEWTON_STEPS; i++) {
+                float error = this.time(axis, s) - t;
+                if (Math.abs(error) < EPSILON) {
+                    break;
+                }
+
+                float slope = this.slope(axis, s);
+                if (slope < EPSILON) {
+                    // flat spot, the interpolated lookup value is as close as it gets
+                    break;
+                }
+                s = Mth.clamp(s - error / slope, 0, 1);
+            }
+            return s;
+        }
+
+        private float bisect(int axis, float t) {
+            float low = 0;
+            float high = 1;
+            for (int i = 0; i < 24; i++) {
+                float mid = (low + high) * 0.5f;
+                if (this.time(axis, mid) < t) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            return (low + high) * 0.5f;
+        }
+
+        private float time(int axis, float s) {
+            int offset = axis * 3;
+            return ((this.coefficients[offset] * s + this.coefficients[offset + 1]) * s + this.coefficients[offset + 2]) * s;
+        }
+
+        private float slope(int axis, float s) {
+            int offset = axis * 3;
+            return (3 * this.coefficients[offset] * s + 2 * this.coefficients[offset + 1]) * s + this.coefficients[offset + 2];
+        }
     }
 }
@@ -1,37 +1,25 @@
 package de.tomalbrc.bil.file.extra.interpolation;
 
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
 
 public class CatmullRomInterpolator implements Interpolator {
+    @Override
     public Vector3f interpolate(float t, Vector3f beforePlus, Vector3f before, Vector3f after, Vector3f afterPlus) {
-        int i = 0;
-        Vector3f arr[] = new Vector3f[2 + (beforePlus==null?0:1) + (afterPlus==null?0:1)];
-
-        if (beforePlus != null) arr[i++] = beforePlus;
-        arr[i++] = before;
-        arr[i++] = after;
-        if (afterPlus != null) arr[i] = afterPlus;
-
-        return catmullRom((t + (beforePlus != null ? 1 : 0)) / (arr.length - 1), arr);
+        return this.interpolate(t, beforePlus, before, after, afterPlus, new Vector3f());
     }
 
-    private static Vector3f catmullRom(float t, Vector3f... points) {
-        final float factor = (points.length - 1) * t;
-
-        int segment = (int) Math.floor(factor);
-
-        Vector3f p0 = points[Math.max(segment - 1, 0)];
-        Vector3f p1 = points[segment];
-        Vector3f p2 = points[Math.min(segment + 1, points.length - 1)];
-        Vector3f p3 = points[Math.min(segment + 2, points.length - 1)];
-
-        float influence = factor - segment;
+    @Override
+    public Vector3f interpolate(float t, Vector3fc beforePlus, Vector3fc before, Vector3fc after, Vector3fc afterPlus, Vector3f dest) {
+        // missing neighbours at the ends of the channel are replaced by the closest keyframe
+        Vector3fc p0 = beforePlus != null ? beforePlus : before;
+        Vector3fc p3 = afterPlus != null ? afterPlus : after;
 
-        float x = calculateCatmullRomSpline(influence, p0.x(), p1.x(), p2.x(), p3.x());
-        float y = calculateCatmullRomSpline(influence, p0.y(), p1.y(), p2.y(), p3.y());
-        float z = calculateCatmullRomSpline(influence, p0.z(), p1.z(), p2.z(), p3.z());
+        float x = calculateCatmullRomSpline(t, p0.x(), before.x(), after.x(), p3.x());
+        float y = calculateCatmullRomSpline(t, p0.y(), before.y(), after.y(), p3.y());
+        float z = calculateCatmullRomSpline(t, p0.z(), before.z(), after.z(), p3.z());
 
-        return new Vector3f(x, y, z);
+        return dest.set(x, y, z);
     }
 
     private static float calculateCatmullRomSpline(float t, float p0, float p1, float p2, float p3) {
@@ -1,7 +1,25 @@
 package de.tomalbrc.bil.file.extra.interpolation;
 
+import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
 
 public interface Interpolator {
     public Vector3f interpolate(float t, Vector3f beforePlus, Vector3f before, Vector3f after, Vector3f afterPlus);
+
+    /**
+     * Writes the interpolated value between before and after into dest and returns it.
+     * The neighbouring keyframe values are null at the start and end of a channel.
+     * <p>
+     * The default implementation copies the values for {@link #interpolate(float, Vector3f, Vector3f, Vector3f, Vector3f)},
+     * the built-in interpolators override it to sample without allocating.
+     */
+    default Vector3f interpolate(float t, @Nullable Vector3fc beforePlus, Vector3fc before, Vector3fc after, @Nullable Vector3fc afterPlus, Vector3f dest) {
+        return dest.set(this.interpolate(t,
+                beforePlus != null ? new Vector3f(beforePlus) : null,
+                new Vector3f(before),
+                new Vector3f(after),
+                afterPlus != null ? new Vector3f(afterPlus) : null
+        ));
+    }
 }
@@ -1,10 +1,16 @@
 package de.tomalbrc.bil.file.extra.interpolation;
 
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
 
 public class StepInterpolator implements Interpolator {
     @Override
     public Vector3f interpolate(float t, Vector3f beforePlus, Vector3f before, Vector3f after, Vector3f afterPlus) {
-        return new Vector3f(t >= 1.0f ? after : before);
+        return this.interpolate(t, beforePlus, before, after, afterPlus, new Vector3f());
+    }
+
+    @Override
+    public Vector3f interpolate(float t, Vector3fc beforePlus, Vector3fc before, Vector3fc after, Vector3fc afterPlus, Vector3f dest) {
+        return dest.set(t >= 1.0f ? after : before);
     }
 }
@@ -3,13 +3,15 @@ package de.tomalbrc.bil.file.importer;
 import de.tomalbrc.bil.core.model.*;
 import de.tomalbrc.bil.file.bbmodel.*;
 import de.tomalbrc.bil.file.extra.BbResourcePackGenerator;
-import de.tomalbrc.bil.json.CachedUuidDeserializer;
+import de.tomalbrc.bil.util.ImportPool;
+import de.tomalbrc.bil.util.ModConfig;
 import de.tomalbrc.bil.util.command.CommandParser;
 import eu.pb4.polymer.resourcepack.api.PolymerModelData;
 import eu.pb4.polymer.resourcepack.api.PolymerResourcePackUtils;
 import eu.pb4.polymer.virtualentity.api.elements.ItemDisplayElement;
 import eu.pb4.polymer.virtualentity.api.tracker.DisplayTrackedData;
 import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
 import gg.moonflower.molangcompiler.api.MolangRuntime;
 import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
 import it.unimi.dsi.fastutil.objects.*;
@@ -23,7 +25,6 @@ import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.Items;
 import net.minecraft.world.phys.Vec2;
 import org.apache.commons.lang3.math.NumberUtils;
-import org.apache.commons.lang3.tuple.Triple;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4f;
 import org.joml.Quaternionf;
@@ -33,28 +34,44 @@ import org.joml.Vector3fc;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 public class BbModelImporter implements ModelImporter<BbModel> {
+    private static final float STEP = 0.05f;
+    // Number of frames sampled by a single task, longer animations are split into ranges of this size
+    private static final int FRAMES_PER_TASK = 32;
+
     private final BbModel model;
+    // Resource pack files generated for this model.
+    private final Object2ObjectLinkedOpenHashMap<ResourceLocation, byte[]> assets = new Object2ObjectLinkedOpenHashMap<>();
+    private final ObjectArraySet<BbTexture> textures = new ObjectArraySet<>();
+
     public BbModelImporter(BbModel model) {
         this.model = model;
     }
 
-    private Object2ObjectOpenHashMap<UUID, Node> makeNodeMap() {
-        Object2ObjectOpenHashMap<UUID, Node> nodeMap = new Object2ObjectOpenHashMap<>();
-        ObjectArraySet<BbTexture> textures = new ObjectArraySet<>();
+    public Object2ObjectLinkedOpenHashMap<ResourceLocation, byte[]> getAssets() {
+        return this.assets;
+    }
 
-        for (BbOutliner.ChildEntry entry: model.outliner) {
-            if (entry.isNode()) {
-                createBones(null, null, model.outliner, nodeMap, textures);
-            }
-        }
+    /**
+     * Builds the bone nodes and requests their item models. Must not run concurrently with other imports.
+     */
+    public Object2ObjectOpenHashMap<UUID, Node> importNodes() {
+        Object2ObjectOpenHashMap<UUID, Node> nodeMap = new Object2ObjectOpenHashMap<>();
 
-        BbResourcePackGenerator.makeTextures(model, textures);
+        createBones(null, null, model.outliner, nodeMap, this.textures);
 
         return nodeMap;
     }
 
+    /**
+     * Adds the textures used by the nodes built in {@link #importNodes()} to the resource pack.
+     */
+    public void importTextures() {
+        BbResourcePackGenerator.makeTextures(model, this.textures, this.assets);
+    }
+
     void createBones(Node parent, BbOutliner parentOutliner, Collection<BbOutliner.ChildEntry> children, Object2ObjectOpenHashMap<UUID, Node> nodeMap, ObjectArraySet<BbTexture> textures) {
         for (BbOutliner.ChildEntry x: children) {
             if (x.isNode()) {
@@ -72,7 +89,7 @@ public class BbModelImporter implements ModelImporter<BbModel> {
 
                     String modelName = outliner.name;
 
-                    ResourceLocation location = BbResourcePackGenerator.makePart(model, modelName, elements, model.textures);
+                    ResourceLocation location = BbResourcePackGenerator.makePart(model, modelName, elements, model.textures, this.assets);
                     textures.addAll(model.textures);
 
                     modelData = PolymerResourcePackUtils.requestModel(Items.LEATHER_HORSE_ARMOR, location);
@@ -87,7 +104,7 @@ public class BbModelImporter implements ModelImporter<BbModel> {
                 else
                     tr.mul(new Matrix4f().rotateY(Mth.PI));
 
-                Node node = new Node(Node.NodeType.bone, parent, tr, outliner.name, outliner.uuid, this.createBoneDisplay(modelData), modelData);
+                Node node = new Node(Node.NodeType.bone, parent, tr, outliner.name, outliner.uuid, nodeMap.size(), this.createBoneDisplay(modelData), modelData);
                 nodeMap.put(outliner.uuid, node);
 
                 // children
@@ -96,15 +113,24 @@ public class BbModelImporter implements ModelImporter<BbModel> {
         }
     }
 
+    /**
+     * Creates the display of a bone. Importers overriding this are created by overriding
+     * {@link de.tomalbrc.bil.file.loader.BbModelLoader#createImporter}, which keeps their models out of the baked model cache.
+     */
     @Nullable
     protected ItemDisplayElement createBoneDisplay(PolymerModelData modelData) {
+        return createDefaultBoneDisplay(modelData);
+    }
+
+    @Nullable
+    public static ItemDisplayElement createDefaultBoneDisplay(PolymerModelData modelData) {
         if (modelData == null)
             return null;
 
         ItemDisplayElement element = new ItemDisplayElement();
         element.setModelTransformation(ItemDisplayContext.HEAD);
         element.setInvisible(true);
-        element.setInterpolationDuration(2);
+        element.setInterpolationDuration(ModConfig.getInstance().interpolationDuration);
         element.getDataTracker().set(DisplayTrackedData.TELEPORTATION_DURATION, 3);
 
         ItemStack itemStack = new ItemStack(modelData.item());
@@ -118,8 +144,12 @@ public class BbModelImporter implements ModelImporter<BbModel> {
     }
 
     private Quaternionf createQuaternion(Vector3f eulerAngles) {
-        return new Quaternionf()
-                .rotateZ(Mth.DEG_TO_RAD * eulerAngles.z)
+        return createQuaternion(eulerAngles, new Quaternionf());
+    }
+
+    private Quaternionf createQuaternion(Vector3f eulerAngles, Quaternionf dest) {
+        return dest
+                .rotationZ(Mth.DEG_TO_RAD * eulerAngles.z)
                 .rotateY(Mth.DEG_TO_RAD * eulerAngles.y)
                 .rotateX(Mth.DEG_TO_RAD * eulerAngles.x);
     }
@@ -141,59 +171,83 @@ public class BbModelImporter implements ModelImporter<BbModel> {
         return res;
     }
 
-    private List<Node> nodePath(Node child) {
-        List<Node> nodePath = new ObjectArrayList<>();
-        while (child != null) {
-            nodePath.add(0, child);
-            child = child.parent();
-        }
-        return nodePath;
-    }
-
-    private Reference2ObjectOpenHashMap<UUID, Pose> poses(BbAnimation animation, Object2ObjectOpenHashMap<UUID, Node> nodeMap, MolangEnvironment environment, float time) throws MolangRuntimeException {
+    private Reference2ObjectOpenHashMap<UUID, Pose> poses(SamplingBuffers buffers, Node[] nodes, KeyframeIndex[] animators, @Nullable MolangTrack[] molangTracks, MolangEnvironment environment, float time) throws MolangRuntimeException {
         Reference2ObjectOpenHashMap<UUID, Pose> poses = new Reference2ObjectOpenHashMap<>();
 
-        for (var entry: nodeMap.entrySet()) {
-            if (entry.getValue().modelData() != null) {
-                Matrix4f matrix4f = new Matrix4f().rotateY(Mth.PI);
-                boolean requiresFrame = false;
-                List<Node> nodePath = nodePath(entry.getValue());
-
-                for (var node : nodePath) {
-                    BbAnimator animator = animation.animators.get(node.uuid());
-                    requiresFrame |= animator != null;
-
-                    Vector3fc origin = node.transform().origin();
+        // nodes are ordered parents first, every node starts from the finished matrix of its parent
+        for (Node node : nodes) {
+            int index = node.index();
+            // evaluated while playing, the same goes for all bones below it
+            if (molangTracks != null && molangTracks[index] != null)
+                continue;
+
+            Node parent = node.parent();
+            Matrix4f matrix4f = buffers.matrices[index];
+            if (parent == null) {
+                matrix4f.rotationY(Mth.PI);
+                buffers.animated[index] = false;
+            } else {
+                matrix4f.set(buffers.matrices[parent.index()]);
+                buffers.animated[index] = buffers.animated[parent.index()];
+            }
 
-                    var triple = animator == null ?
-                            Triple.of(new Vector3f(), new Vector3f(), new Vector3f(1.f)) :
-                            Sampler.sample(animator.keyframes, model.animationVariablePlaceholders, environment, time);
+            KeyframeIndex animator = animators[index];
+            Vector3fc origin = node.transform().origin();
+            if (animator == null) {
+                matrix4f.translate(origin);
+                matrix4f.rotate(node.transform().rotation());
+            } else {
+                buffers.animated[index] = true;
+                Sampler.sample(animator, model.animationVariablePlaceholders, environment, time, buffers.position, buffers.rotation, buffers.scale, buffers.keyframes);
+
+                Quaternionf localRot = node.transform().rotation().mul(createQuaternion(buffers.rotation.mul(-1, -1, 1), buffers.quaternion), buffers.quaternion);
+                Vector3f localPos = buffers.position.div(16).add(origin);
+
+                matrix4f.translate(localPos);
+                matrix4f.rotate(localRot);
+                matrix4f.scale(buffers.scale);
+            }
 
-                    Quaternionf localRot = node.transform().rotation().mul(createQuaternion(triple.getMiddle().mul(-1, -1, 1)), new Quaternionf());
-                    Vector3f localPos = triple.getLeft().div(16).add(origin);
+            if (buffers.animated[index] && node.modelData() != null)
+                poses.put(node.uuid(), Pose.of(buffers.pose.set(matrix4f).scale(node.transform().scale())));
+        }
+        return poses;
+    }
 
-                    matrix4f.translate(localPos);
-                    matrix4f.rotate(localRot);
-                    matrix4f.scale(triple.getRight());
-                }
+    /**
+     * Returns the nodes ordered by their index, which puts every parent before its children.
+     */
+    private Node[] sortedNodes(Object2ObjectOpenHashMap<UUID, Node> nodeMap) {
+        Node[] nodes = new Node[nodeMap.size()];
+        for (Node node : nodeMap.values()) {
+            nodes[node.index()] = node;
+        }
+        return nodes;
+    }
 
-                if (requiresFrame)
-                    poses.put(entry.getKey(), Pose.of(matrix4f.scale(entry.getValue().transform().scale())));
+    private PoseTrack[] poseTracks(Object2ObjectOpenHashMap<UUID, Node> nodeMap, Reference2ObjectOpenHashMap<UUID, Pose>[] framePoses) {
+        float epsilon = ModConfig.getInstance().poseEpsilon;
+        PoseTrack[] tracks = new PoseTrack[nodeMap.size()];
+        for (Node node : nodeMap.values()) {
+            Pose[] poses = new Pose[framePoses.length];
+            for (int i = 0; i < poses.length; i++) {
+                poses[i] = framePoses[i].get(node.uuid());
             }
+            tracks[node.index()] = PoseTrack.of(node.uuid(), poses, epsilon);
         }
-        return poses;
+        return tracks;
     }
 
     private Frame.Variant frameVariant(BbAnimation anim, float t) {
         // Needs custom aj loader to load variant list
-//        UUID effectsUUID = CachedUuidDeserializer.get("effects");
+//        UUID effectsUUID = model.uuids.get("effects");
 //        if (effectsUUID != null && anim.animators.containsKey(effectsUUID)) {
 //            BbAnimator animator = anim.animators.get(effectsUUID);
 //            if (animator.type == BbAnimator.Type.effect) {
 //                for (BbKeyframe kf : animator.keyframes) {
 //                    // todo: custom AjModelLoader
 //                    if (Math.abs(kf.time-t) < 0.15f && (kf.channel == BbKeyframe.Channel.variants)) { // todo: snap based on "snapping" in anim
-//                        UUID key = CachedUuidDeserializer.get(kf.dataPoints.get(0).get("variant").getStringValue());
+//                        UUID key = model.uuids.get(kf.dataPoints.get(0).get("variant").getStringValue());
 //                        var cond = kf.dataPoints.get(0).containsKey("executeCondition") ? CommandParser.parse(kf.dataPoints.get(0).get("executeCondition").getStringValue()) : null;
 //                        return new Frame.Variant(key, cond);
 //                    }
@@ -204,7 +258,7 @@ public class BbModelImporter implements ModelImporter<BbModel> {
     }
 
     private Frame.Commands frameCommands(BbAnimation anim, float t) {
-        UUID effectsUUID = CachedUuidDeserializer.get("effects");
+        UUID effectsUUID = model.uuids.get("effects");
         if (effectsUUID != null && anim.animators.containsKey(effectsUUID) && anim.animators.get(effectsUUID).type == BbAnimator.Type.effect) {
             BbAnimator animator = anim.animators.get(effectsUUID);
             for (BbKeyframe kf : animator.keyframes) {
@@ -226,7 +280,7 @@ public class BbModelImporter implements ModelImporter<BbModel> {
     }
 
     private SoundEvent frameSound(BbAnimation anim, float t) {
-        UUID effectsUUID = CachedUuidDeserializer.get("effects");
+        UUID effectsUUID = model.uuids.get("effects");
         if (effectsUUID != null && anim.animators.containsKey(effectsUUID) && anim.animators.get(effectsUUID).type == BbAnimator.Type.effect) {
             BbAnimator animator = anim.animators.get(effectsUUID);
             for (BbKeyframe kf : animator.keyframes) {
@@ -243,41 +297,112 @@ public class BbModelImporter implements ModelImporter<BbModel> {
 
 
     private Object2ObjectOpenHashMap<String, Animation> animations(Object2ObjectOpenHashMap<UUID, Node> nodeMap) {
-        Object2ObjectOpenHashMap<String, Animation> res = new Object2ObjectOpenHashMap<>();
-        float step = 0.05f;
-
-        model.animations.parallelStream().forEach(anim -> {
-            try {
-                //List<Frame> frames = new ObjectArrayList<>();
-                int frameCount = Math.round(anim.length / step);
-                Frame[] frames = new Frame[frameCount];
-                for (int i = 0; i < frameCount; i++) {
-                    float time = i * step;
-
-                    MolangEnvironment env = MolangRuntime.runtime()
-                            .setQuery("life_time", time)
-                            .setQuery("anim_time", time)
-                            .create();
-
-                    // pose for bone in list of frames for an animation
-                    Reference2ObjectOpenHashMap<UUID, Pose> poses = poses(anim, nodeMap, env, time);
-                    frames[i] = new Frame(time, poses, this.frameVariant(anim, time), this.frameCommands(anim, time), this.frameSound(anim, time));
+        List<BbAnimation> bbAnimations = model.animations;
+        // no-op for models that were compiled right after loading
+        MolangPrecompiler.compile(model);
+
+        Node[] nodes = this.sortedNodes(nodeMap);
+        Animation[] animations = new Animation[bbAnimations.size()];
+        ImportPool.invoke(() -> IntStream.range(0, animations.length).parallel().forEach(i -> animations[i] = this.animation(bbAnimations.get(i), nodeMap, nodes)));
+
+        // collected in file order, so the result doesn't depend on which animation finished first
+        Object2ObjectOpenHashMap<String, Animation> res = new Object2ObjectOpenHashMap<>(animations.length);
+        for (int i = 0; i < animations.length; i++) {
+            res.put(bbAnimations.get(i).name, animations[i]);
+        }
+        return res;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Animation animation(BbAnimation anim, Object2ObjectOpenHashMap<UUID, Node> nodeMap, Node[] nodes) {
+        int frameCount = Math.round(anim.length / STEP);
+        Frame[] frames = new Frame[frameCount];
+        Reference2ObjectOpenHashMap<UUID, Pose>[] framePoses = new Reference2ObjectOpenHashMap[frameCount];
+
+        // keyframes are indexed once per animation, not for every sampled frame
+        KeyframeIndex[] animators = new KeyframeIndex[nodes.length];
+        for (Node node : nodes) {
+            BbAnimator animator = anim.animators.get(node.uuid());
+            if (animator != null) {
+                animators[node.index()] = KeyframeIndex.of(animator.keyframes);
+            }
+        }
+
+        MolangTrack[] molangTracks = ModConfig.getInstance().liveMolangChannels ? MolangTrackBuilder.build(anim, nodes) : null;
+
+        // frames are sampled in ranges, every frame is written to its own slot
+        int taskCount = (frameCount + FRAMES_PER_TASK - 1) / FRAMES_PER_TASK;
+        ImportPool.invoke(() -> IntStream.range(0, taskCount).parallel().forEach(task -> {
+            int end = Math.min(frameCount, (task + 1) * FRAMES_PER_TASK);
+            SamplingBuffers buffers = new SamplingBuffers(nodes.length);
+            MolangEnvironment env = MolangRuntime.runtime()
+                    .setQuery("life_time", buffers.time)
+                    .setQuery("anim_time", buffers.time)
+                    .create();
+
+            for (int i = task * FRAMES_PER_TASK; i < end; i++) {
+                float time = i * STEP;
+                buffers.time.value = time;
+
+                // pose for bone in list of frames for an animation
+                try {
+                    framePoses[i] = poses(buffers, nodes, animators, molangTracks, env, time);
+                } catch (MolangRuntimeException e) {
+                    throw new RuntimeException(e);
                 }
+            }
+        }));
 
-                // todo: cleanup!
-                int startDelay = (int) (anim.startDelay != null && NumberUtils.isParsable(anim.startDelay) ? NumberUtils.createFloat(anim.startDelay).floatValue() : 0);
-                int loopDelay = (int) (anim.loopDelay != null && NumberUtils.isParsable(anim.loopDelay) ? NumberUtils.createFloat(anim.loopDelay).floatValue() : 0);
+        // todo: cleanup!
+        int startDelay = (int) (anim.startDelay != null && NumberUtils.isParsable(anim.startDelay) ? NumberUtils.createFloat(anim.startDelay).floatValue() : 0);
+        int loopDelay = (int) (anim.loopDelay != null && NumberUtils.isParsable(anim.loopDelay) ? NumberUtils.createFloat(anim.loopDelay).floatValue() : 0);
 
-                ReferenceOpenHashSet<UUID> affectedBones = new ReferenceOpenHashSet<>();
-                Animation animation = new Animation(frames, startDelay, loopDelay, frameCount, anim.loop, affectedBones, false);
+        ReferenceOpenHashSet<UUID> affectedBones = new ReferenceOpenHashSet<>();
+        PoseTrack[] poseTracks = this.poseTracks(nodeMap, framePoses);
+        for (int i = 0; i < frameCount; i++) {
+            float time = i * STEP;
+            frames[i] = new Frame(time, Frame.poses(poseTracks, i), this.frameVariant(anim, time), this.frameCommands(anim, time), this.frameSound(anim, time));
+        }
+        if (molangTracks != null) {
+            return new Animation(frames, poseTracks, startDelay, loopDelay, frameCount, anim.loop, affectedBones, false, molangTracks);
+        }
+        return new Animation(frames, poseTracks, startDelay, loopDelay, frameCount, anim.loop, affectedBones, false);
+    }
 
-                res.put(anim.name, animation);
-            } catch (MolangRuntimeException e) {
-                throw new RuntimeException(e);
-            }
-        });
+    /**
+     * Molang query that returns the time of the frame that is currently sampled.
+     */
+    private static class TimeQuery implements MolangExpression {
+        private float value;
 
-        return res;
+        @Override
+        public float get(MolangEnvironment environment) {
+            return this.value;
+        }
+    }
+
+    /**
+     * Matrices and vectors reused for every frame sampled by one task.
+     */
+    private static class SamplingBuffers {
+        private final Matrix4f[] matrices;
+        private final boolean[] animated;
+        private final Matrix4f pose = new Matrix4f();
+        private final Vector3f position = new Vector3f();
+        private final Vector3f rotation = new Vector3f();
+        private final Vector3f scale = new Vector3f();
+        private final Quaternionf quaternion = new Quaternionf();
+        private final KeyframeIndex.Buffers keyframes = new KeyframeIndex.Buffers();
+        // time queries of the task's molang environment
+        private final TimeQuery time = new TimeQuery();
+
+        private SamplingBuffers(int nodeCount) {
+            this.matrices = new Matrix4f[nodeCount];
+            this.animated = new boolean[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                this.matrices[i] = new Matrix4f();
+            }
+        }
     }
 
     private Vec2 size() {
@@ -287,7 +412,15 @@ public class BbModelImporter implements ModelImporter<BbModel> {
 
     @Override
     public Model importModel() {
-        var nodeMap = this.makeNodeMap();
+        var nodeMap = this.importNodes();
+        this.importTextures();
+        return this.importModel(nodeMap);
+    }
+
+    /**
+     * Bakes the default pose and animations of the nodes built in {@link #importNodes()}.
+     */
+    public Model importModel(Object2ObjectOpenHashMap<UUID, Node> nodeMap) {
         var defaultPose = this.defaultPose(nodeMap);
         var animations = this.animations(nodeMap);
         var variants = this.variants();
@@ -0,0 +1,239 @@
+package de.tomalbrc.bil.file.importer;
+
+import de.tomalbrc.bil.file.bbmodel.BbKeyframe;
+import de.tomalbrc.bil.file.extra.BbVariablePlaceholders;
+import de.tomalbrc.bil.file.extra.interpolation.BezierInterpolator;
+import de.tomalbrc.bil.file.extra.interpolation.Interpolation;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+
+import java.util.List;
+
+/**
+ * Keyframes of an animator, split by channel and sorted by time once, so they can be sampled with a binary search.
+ * <p>
+ * Channels whose keyframes all have the same plain number values are sampled as a constant.
+ * Bezier segments set up their time curves once, instead of for every sample.
+ * Data point values must be prepared before the index is built.
+ */
+class KeyframeIndex {
+    private final Channel position;
+    private final Channel rotation;
+    private final Channel scale;
+
+    private KeyframeIndex(Channel position, Channel rotation, Channel scale) {
+        this.position = position;
+        this.rotation = rotation;
+        this.scale = scale;
+    }
+
+    static KeyframeIndex of(@Nullable List<BbKeyframe> keyframes) {
+        return new KeyframeIndex(
+                Channel.of(keyframes, BbKeyframe.Channel.position),
+                Channel.of(keyframes, BbKeyframe.Channel.rotation),
+                Channel.of(keyframes, BbKeyframe.Channel.scale)
+        );
+    }
+
+    /**
+     * Samples the position, rotation and scale channels at the given time into the given vectors.
+     */
+    void sample(BbVariablePlaceholders placeholders, MolangEnvironment environment, float time, Vector3f posDest, Vector3f rotDest, Vector3f scaleDest) throws MolangRuntimeException {
+        this.sample(placeholders, environment, time, posDest, rotDest, scaleDest, new Buffers());
+    }
+
+    /**
+     * Samples the position, rotation and scale channels at the given time into the given vectors,
+     * using the given buffers for the keyframe values instead of allocating new vectors.
+     */
+    void sample(BbVariablePlaceholders placeholders, MolangEnvironment environment, float time, Vector3f posDest, Vector3f rotDest, Vector3f scaleDest, Buffers buffers) throws MolangRuntimeException {
+        if (!this.position.sample(placeholders, environment, time, posDest, buffers)) posDest.zero();
+        if (!this.rotation.sample(placeholders, environment, time, rotDest, buffers)) rotDest.zero();
+        if (!this.scale.sample(placeholders, environment, time, scaleDest, buffers)) scaleDest.set(1, 1, 1);
+    }
+
+    /**
+     * Keyframe values around the sampled time. The index is shared between sampling threads, so every thread
+     * needs its own buffers.
+     */
+    static class Buffers {
+        private final Vector3f beforePlus = new Vector3f();
+        private final Vector3f before = new Vector3f();
+        private final Vector3f after = new Vector3f();
+        private final Vector3f afterPlus = new Vector3f();
+    }
+
+    private static class Channel {
+        private static final Channel EMPTY = new Channel(new BbKeyframe[0], null);
+
+        private final BbKeyframe[] keyframes;
+        private final float[] times;
+        // Value of the whole channel if it never changes
+        @Nullable
+        private final Vector3f constant;
+        // Bezier segments, indexed by the keyframe they end on
+        @Nullable
+        private final BezierInterpolator.Segment[] segments;
+
+        private Channel(BbKeyframe[] keyframes, @Nullable Vector3f constant) {
+            this.keyframes = keyframes;
+            this.times = new float[keyframes.length];
+            for (int i = 0; i < keyframes.length; i++) {
+                this.times[i] = keyframes[i].time;
+            }
+            this.constant = constant;
+            this.segments = this.bezierSegments();
+        }
+
+        @Nullable
+        private BezierInterpolator.Segment[] bezierSegments() {
+            BezierInterpolator.Segment[] segments = null;
+            for (int i = 1; i < this.keyframes.length; i++) {
+                if (this.times[i] > this.times[i - 1]) {
+                    // same keyframe pair as in sample
+                    BbKeyframe before = this.keyframes[lowerBound(this.times, i, this.times[i - 1])];
+                    BbKeyframe after = this.keyframes[i];
+                    if (isBezier(before, after)) {
+                        if (segments == null) {
+                            segments = new BezierInterpolator.Segment[this.keyframes.length];
+                        }
+                        segments[i] = BezierInterpolator.segment(after.time - before.time, before.bezierRightTime, after.bezierLeftTime);
+                    }
+                }
+            }
+            return segments;
+        }
+
+        // like in Blockbench, a segment is a bezier curve if either of its keyframes is one
+        private static boolean isBezier(BbKeyframe before, BbKeyframe after) {
+            return before.interpolation == Interpolation.BEZIER || after.interpolation == Interpolation.BEZIER;
+        }
+
+        private static Channel of(@Nullable List<BbKeyframe> keyframes, BbKeyframe.Channel channel) {
+            if (keyframes == null || keyframes.isEmpty()) {
+                return EMPTY;
+            }
+
+            // stable sort, keyframes with the same time keep their order
+            BbKeyframe[] sorted = keyframes.stream().filter(x -> x.channel == channel).sorted().toArray(BbKeyframe[]::new);
+            return sorted.length == 0 ? EMPTY : new Channel(sorted, constantValue(sorted));
+        }
+
+        @Nullable
+        private static Vector3f constantValue(BbKeyframe[] keyframes) {
+            // before the first keyframe the channel has no value
+            if (keyframes[0].time > 0) {
+                return null;
+            }
+
+            Vector3f value = null;
+            for (BbKeyframe keyframe : keyframes) {
+                // bezier handles can move the curve away from equal keyframe values, missing values are left to the regular path
+                if (keyframe.interpolation == Interpolation.BEZIER || keyframe.dataPoints == null || keyframe.dataPoints.isEmpty()) {
+                    return null;
+                }
+
+                var dataPoint = keyframe.dataPoints.get(0);
+                for (String axis : new String[]{"x", "y", "z"}) {
+                    BbKeyframe.DataPointValue axisValue = dataPoint.get(axis);
+                    if (axisValue == null || !axisValue.isConstant()) {
+                        return null;
+                    }
+                }
+
+                try {
+                    Vector3f keyframeValue = keyframe.getVector3f(0, null, null);
+                    if (value == null) {
+                        value = keyframeValue;
+                    } else if (!value.equals(keyframeValue)) {
+                        return null;
+                    }
+                } catch (MolangRuntimeException e) {
+                    return null;
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Writes the value at the given time into dest, returns false if the channel has no value at that time.
+         */
+        private boolean sample(BbVariablePlaceholders placeholders, MolangEnvironment environment, float time, Vector3f dest, Buffers buffers) throws MolangRuntimeException {
+            if (this.constant != null && time >= this.times[0]) {
+                dest.set(this.constant);
+                return true;
+            }
+
+            // number of keyframes at or before the time
+            int count = upperBound(this.times, this.times.length, time);
+            if (count == 0) {
+                return false; // Can't interpolate
+            }
+
+            // the first of the last keyframes at or before the time, and the first of the ones before that
+            int beforeIndex = lowerBound(this.times, count, this.times[count - 1]);
+            BbKeyframe before = this.keyframes[beforeIndex];
+            BbKeyframe beforeBefore = beforeIndex > 0 ? this.keyframes[lowerBound(this.times, beforeIndex, this.times[beforeIndex - 1])] : null;
+            BbKeyframe after = count < this.keyframes.length ? this.keyframes[count] : null;
+            BbKeyframe afterAfter = count + 1 < this.keyframes.length ? this.keyframes[count + 1] : null;
+
+            if (after == null) {
+                before.getVector3f(0, placeholders, environment, dest);
+                return true;
+            }
+
+            if (before.time > 0 && beforeBefore == null) {
+                beforeBefore = before;
+            }
+
+            float t = (time - before.time) / (after.time - before.time);
+            if (this.segments != null && this.segments[count] != null) {
+                this.segments[count].interpolate(t,
+                        before.getVector3f(0, placeholders, environment, buffers.before), before.bezierRightValue,
+                        after.getVector3f(0, placeholders, environment, buffers.after), after.bezierLeftValue,
+                        dest);
+                return true;
+            }
+
+            before.interpolation.get().interpolate(t,
+                    beforeBefore == null ? null : beforeBefore.getVector3f(0, placeholders, environment, buffers.beforePlus),
+                    before.getVector3f(0, placeholders, environment, buffers.before),
+                    after.getVector3f(0, placeholders, environment, buffers.after),
+                    afterAfter == null ? null : afterAfter.getVector3f(0, placeholders, environment, buffers.afterPlus),
+                    dest);
+            return true;
+        }
+
+        // index of the first time greater than the given one
+        private static int upperBound(float[] times, int length, float time) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // index of the first time greater than or equal to the given one
+        private static int lowerBound(float[] times, int length, float time) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package de.tomalbrc.bil.file.importer;
+
+import de.tomalbrc.bil.BIL;
+import de.tomalbrc.bil.file.bbmodel.BbAnimation;
+import de.tomalbrc.bil.file.bbmodel.BbAnimator;
+import de.tomalbrc.bil.file.bbmodel.BbKeyframe;
+import de.tomalbrc.bil.file.bbmodel.BbModel;
+import de.tomalbrc.bil.file.extra.BbVariablePlaceholders;
+import de.tomalbrc.bil.file.extra.MolangConstantFolder;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * Compiles the Molang expressions of all position, rotation and scale keyframes of a model ahead of sampling.
+ * <p>
+ * Placeholders are substituted once per distinct expression. Expressions that don't depend on queries or variables
+ * are folded into plain numbers, the others are compiled, and data points with the same expression share one compiled
+ * instance. Afterwards, keyframe values are read-only and can be sampled from any number of threads.
+ */
+public class MolangPrecompiler {
+    private final BbVariablePlaceholders placeholders;
+    private final Map<String, Result> results = new Object2ObjectOpenHashMap<>();
+    private int foldedCount;
+    private int compiledCount;
+
+    private MolangPrecompiler(BbVariablePlaceholders placeholders) {
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * Prepares all transform keyframe values of the given model. Values that were already prepared are skipped.
+     */
+    public static void compile(BbModel model) {
+        if (model.animations == null)
+            return;
+
+        MolangPrecompiler compiler = new MolangPrecompiler(model.animationVariablePlaceholders);
+        for (BbAnimation animation : model.animations) {
+            if (animation.animators == null)
+                continue;
+
+            for (BbAnimator animator : animation.animators.values()) {
+                if (animator.keyframes == null)
+                    continue;
+
+                for (BbKeyframe keyframe : animator.keyframes) {
+                    boolean transform = keyframe.channel == BbKeyframe.Channel.position || keyframe.channel == BbKeyframe.Channel.rotation || keyframe.channel == BbKeyframe.Channel.scale;
+                    if (transform && keyframe.dataPoints != null) {
+                        for (var dataPoint : keyframe.dataPoints) {
+                            for (BbKeyframe.DataPointValue value : dataPoint.values()) {
+                                if (value != null)
+                                    compiler.prepare(value);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!compiler.results.isEmpty()) {
+            BIL.LOGGER.debug("Prepared molang of model {}: {} expressions folded into constants, {} compiled", model.modelIdentifier, compiler.foldedCount, compiler.compiledCount);
+        }
+    }
+
+    private void prepare(BbKeyframe.DataPointValue value) {
+        if (value.isPrepared())
+            return;
+
+        Result result = this.results.computeIfAbsent(value.getStringValue(), this::resolve);
+        if (result.expression != null) {
+            value.setExpression(result.expression);
+        } else {
+            value.setConstant(result.constant);
+        }
+    }
+
+    private Result resolve(String expression) {
+        String modifiedExpression = expression.trim();
+        if (this.placeholders != null)
+            modifiedExpression = this.placeholders.substituteVariables(modifiedExpression);
+
+        if (modifiedExpression.isEmpty()) {
+            this.foldedCount++;
+            return new Result(0, null);
+        }
+
+        Float constant = MolangConstantFolder.fold(modifiedExpression);
+        if (constant != null) {
+            this.foldedCount++;
+            return new Result(constant, null);
+        }
+
+        try {
+            this.compiledCount++;
+            // models may be compiled on several import threads at once
+            synchronized (BIL.COMPILER) {
+                return new Result(0, BIL.COMPILER.compile(modifiedExpression));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to compile molang expression: " + modifiedExpression, e);
+        }
+    }
+
+    private record Result(float constant, @Nullable MolangExpression expression) {
+    }
+}
@@ -0,0 +1,176 @@
+package de.tomalbrc.bil.file.importer;
+
+import de.tomalbrc.bil.core.model.MolangTrack;
+import de.tomalbrc.bil.core.model.Node;
+import de.tomalbrc.bil.file.bbmodel.BbAnimation;
+import de.tomalbrc.bil.file.bbmodel.BbAnimator;
+import de.tomalbrc.bil.file.bbmodel.BbKeyframe;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import net.minecraft.util.Mth;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+
+import java.util.List;
+
+/**
+ * Picks the bones of an animation that are evaluated while playing instead of being baked into frames.
+ * <p>
+ * A bone is evaluated live if every transform channel it animates is a single keyframe at the start of the animation,
+ * and at least one of their values is a Molang expression. The bones below it are evaluated live as well, so they may
+ * only be animated the same way, and the bones above it may not be animated, so that its parent never moves.
+ * Data point values must be prepared before the tracks are built.
+ */
+class MolangTrackBuilder {
+    private static final BbKeyframe.Channel[] CHANNELS = {BbKeyframe.Channel.position, BbKeyframe.Channel.rotation, BbKeyframe.Channel.scale};
+    private static final String[] AXES = {"x", "y", "z"};
+
+    /**
+     * Returns the Molang tracks of the given animation, indexed by {@link Node#index()}, or null if all bones are baked.
+     *
+     * @param nodes Nodes ordered by their index, parents first.
+     */
+    @Nullable
+    static MolangTrack[] build(BbAnimation animation, Node[] nodes) {
+        if (animation.animators == null) {
+            return null;
+        }
+
+        // whether the bone and all bones below it can be evaluated live
+        boolean[] supported = new boolean[nodes.length];
+        boolean[] animated = new boolean[nodes.length];
+        for (Node node : nodes) {
+            BbAnimator animator = animation.animators.get(node.uuid());
+            animated[node.index()] = animator != null && animator.keyframes != null && !animator.keyframes.isEmpty();
+            supported[node.index()] = !animated[node.index()] || isSingleKeyframe(animator.keyframes);
+        }
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            Node parent = nodes[i].parent();
+            if (parent != null && !supported[i]) {
+                supported[parent.index()] = false;
+            }
+        }
+
+        MolangTrack[] tracks = new MolangTrack[nodes.length];
+        // whether a bone above this one is baked and animated
+        boolean[] movingParent = new boolean[nodes.length];
+        Matrix4f[] restTransforms = new Matrix4f[nodes.length];
+        boolean found = false;
+
+        for (Node node : nodes) {
+            int index = node.index();
+            Node parent = node.parent();
+            boolean parentLive = parent != null && tracks[parent.index()] != null;
+
+            Matrix4f restTransform = parent == null ? new Matrix4f().rotationY(Mth.PI) : new Matrix4f(restTransforms[parent.index()]);
+            restTransforms[index] = restTransform.translate(node.transform().origin()).rotate(node.transform().rotation());
+            if (parent != null) {
+                movingParent[index] = movingParent[parent.index()] || (animated[parent.index()] && !parentLive);
+            }
+
+            BbAnimator animator = animated[index] ? animation.animators.get(node.uuid()) : null;
+            if (parentLive || (supported[index] && !movingParent[index] && animator != null && hasExpression(animator.keyframes))) {
+                tracks[index] = track(node, parentLive ? null : parent, restTransforms, animator);
+                found = true;
+            }
+        }
+
+        return found ? tracks : null;
+    }
+
+    private static MolangTrack track(Node node, @Nullable Node restParent, Matrix4f[] restTransforms, @Nullable BbAnimator animator) {
+        List<BbKeyframe> keyframes = animator != null ? animator.keyframes : null;
+        int parentIndex = node.parent() != null && restParent == null ? node.parent().index() : -1;
+        return new MolangTrack(
+                parentIndex,
+                restParent != null ? restTransforms[restParent.index()] : null,
+                node.transform().origin(),
+                node.transform().rotation(),
+                node.transform().scale(),
+                node.modelData() != null,
+                channel(keyframes, BbKeyframe.Channel.position),
+                channel(keyframes, BbKeyframe.Channel.rotation),
+                channel(keyframes, BbKeyframe.Channel.scale)
+        );
+    }
+
+    @Nullable
+    private static MolangExpression[] channel(@Nullable List<BbKeyframe> keyframes, BbKeyframe.Channel channel) {
+        BbKeyframe keyframe = keyframes != null ? find(keyframes, channel) : null;
+        if (keyframe == null) {
+            return null;
+        }
+
+        MolangExpression[] expressions = new MolangExpression[AXES.length];
+        for (int i = 0; i < AXES.length; i++) {
+            BbKeyframe.DataPointValue value = keyframe.dataPoints.get(0).get(AXES[i]);
+            if (value.getExpression() != null) {
+                expressions[i] = value.getExpression();
+            } else {
+                float constant = constant(value);
+                expressions[i] = environment -> constant;
+            }
+        }
+        return expressions;
+    }
+
+    private static boolean isSingleKeyframe(List<BbKeyframe> keyframes) {
+        for (BbKeyframe.Channel channel : CHANNELS) {
+            int count = 0;
+            for (BbKeyframe keyframe : keyframes) {
+                if (keyframe.channel == channel) {
+                    count++;
+                    if (count > 1 || keyframe.time != 0 || !hasValues(keyframe)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasValues(BbKeyframe keyframe) {
+        if (keyframe.dataPoints == null || keyframe.dataPoints.isEmpty()) {
+            return false;
+        }
+
+        for (String axis : AXES) {
+            if (keyframe.dataPoints.get(0).get(axis) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasExpression(List<BbKeyframe> keyframes) {
+        for (BbKeyframe.Channel channel : CHANNELS) {
+            BbKeyframe keyframe = find(keyframes, channel);
+            if (keyframe != null) {
+                for (String axis : AXES) {
+                    if (keyframe.dataPoints.get(0).get(axis).getExpression() != null) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static BbKeyframe find(List<BbKeyframe> keyframes, BbKeyframe.Channel channel) {
+        for (BbKeyframe keyframe : keyframes) {
+            if (keyframe.channel == channel) {
+                return keyframe;
+            }
+        }
+        return null;
+    }
+
+    private static float constant(BbKeyframe.DataPointValue value) {
+        try {
+            return value.getValue(null, null);
+        } catch (MolangRuntimeException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
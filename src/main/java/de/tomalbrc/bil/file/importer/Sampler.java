@@ -7,70 +7,47 @@ import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
 import org.apache.commons.lang3.tuple.Triple;
 import org.joml.Vector3f;
 
-import java.util.Iterator;
 import java.util.List;
 
+/**
+ * Samples keyframe lists directly. Sampling many frames of the same keyframes should use a {@link KeyframeIndex} instead.
+ */
 class Sampler {
-    private static Vector3f interpolateKeyframeChannelAt(Iterator<BbKeyframe> iterator, BbVariablePlaceholders placeholders, MolangEnvironment environment, float time) throws MolangRuntimeException {
-        // Find the closest keyframes before and after the target time, including those before "before" and after "after"
-        BbKeyframe before = null;
-        BbKeyframe beforeBefore = null;
-        BbKeyframe after = null;
-        BbKeyframe afterAfter = null;
+    public static Triple<Vector3f, Vector3f, Vector3f> sample(List<BbKeyframe> keyframes, BbVariablePlaceholders placeholders, MolangEnvironment environment, float time) throws MolangRuntimeException {
+        Vector3f pos = new Vector3f();
+        Vector3f rot = new Vector3f();
+        Vector3f scale = new Vector3f();
+        sample(keyframes, placeholders, environment, time, pos, rot, scale);
+        return Triple.of(pos, rot, scale);
+    }
 
-        while (iterator.hasNext()) {
-            BbKeyframe currentFrame = iterator.next();
-            if (currentFrame.time <= time) {
-                if (before == null || currentFrame.time > before.time) {
-                    beforeBefore = before;
-                    before = currentFrame;
-                }
-            } else {
-                after = currentFrame;
-                if (iterator.hasNext()) {
-                    afterAfter = iterator.next();
+    /**
+     * Samples the position, rotation and scale channels at the given time into the given vectors.
+     * Values that weren't precompiled are prepared first.
+     */
+    public static void sample(List<BbKeyframe> keyframes, BbVariablePlaceholders placeholders, MolangEnvironment environment, float time, Vector3f posDest, Vector3f rotDest, Vector3f scaleDest) throws MolangRuntimeException {
+        prepare(keyframes, placeholders);
+        sample(KeyframeIndex.of(keyframes), placeholders, environment, time, posDest, rotDest, scaleDest, new KeyframeIndex.Buffers());
+    }
+
+    private static void prepare(List<BbKeyframe> keyframes, BbVariablePlaceholders placeholders) {
+        for (BbKeyframe keyframe : keyframes) {
+            boolean transform = keyframe.channel == BbKeyframe.Channel.position || keyframe.channel == BbKeyframe.Channel.rotation || keyframe.channel == BbKeyframe.Channel.scale;
+            if (transform && keyframe.dataPoints != null) {
+                for (var dataPoint : keyframe.dataPoints) {
+                    for (BbKeyframe.DataPointValue value : dataPoint.values()) {
+                        if (value != null)
+                            value.prepare(placeholders);
+                    }
                 }
-                break;
             }
         }
-
-        if (before == null) {
-            return null; // Can't interpolate
-        } else if (after == null) {
-            return before.getVector3f(0, placeholders, environment);
-        }
-
-        if (before.time > 0 && beforeBefore == null) {
-            beforeBefore = before;
-        }
-
-        float t = (time - before.time) / (after.time - before.time);
-        return before.interpolation.get().interpolate(t,
-                beforeBefore == null ? null : beforeBefore.getVector3f(0, placeholders, environment),
-                before == null ? null : before.getVector3f(0, placeholders, environment),
-                after == null ? null : after.getVector3f(0, placeholders, environment),
-                afterAfter == null ? null : afterAfter.getVector3f(0, placeholders, environment));
     }
 
-    public static Triple<Vector3f, Vector3f, Vector3f> sample(List<BbKeyframe> keyframes, BbVariablePlaceholders placeholders, MolangEnvironment environment, float time) throws MolangRuntimeException {
-        Vector3f pos = null;
-        Vector3f rot = null;
-        Vector3f scale = null;
-
-        if (keyframes != null && !keyframes.isEmpty()) {
-            var pi = keyframes.stream().filter(x -> x.channel == BbKeyframe.Channel.position).sorted().iterator();
-            var ri = keyframes.stream().filter(x -> x.channel == BbKeyframe.Channel.rotation).sorted().iterator();
-            var si = keyframes.stream().filter(x -> x.channel == BbKeyframe.Channel.scale).sorted().iterator();
-
-            pos = interpolateKeyframeChannelAt(pi, placeholders, environment, time);
-            rot = interpolateKeyframeChannelAt(ri, placeholders, environment, time);
-            scale = interpolateKeyframeChannelAt(si, placeholders, environment, time);
-        }
-
-        if (pos == null) pos = new Vector3f();
-        if (rot == null) rot = new Vector3f();
-        if (scale == null) scale = new Vector3f(1, 1, 1);
-
-        return Triple.of(pos, rot, scale);
+    /**
+     * Samples an indexed animator at the given time into the given vectors, without allocating.
+     */
+    static void sample(KeyframeIndex index, BbVariablePlaceholders placeholders, MolangEnvironment environment, float time, Vector3f posDest, Vector3f rotDest, Vector3f scaleDest, KeyframeIndex.Buffers buffers) throws MolangRuntimeException {
+        index.sample(placeholders, environment, time, posDest, rotDest, scaleDest, buffers);
     }
 }
@@ -0,0 +1,537 @@
+package de.tomalbrc.bil.file.loader;
+
+import de.tomalbrc.bil.BIL;
+import de.tomalbrc.bil.core.model.*;
+import de.tomalbrc.bil.file.importer.BbModelImporter;
+import de.tomalbrc.bil.util.ModConfig;
+import de.tomalbrc.bil.util.RPUtil;
+import de.tomalbrc.bil.util.command.CommandParser;
+import de.tomalbrc.bil.util.command.ParsedCommand;
+import eu.pb4.polymer.resourcepack.api.PolymerModelData;
+import eu.pb4.polymer.resourcepack.api.PolymerResourcePackUtils;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.sounds.SoundEvent;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.phys.Vec2;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Binary cache of imported models, stored in config/bil/cache.
+ * <p>
+ * A cache file contains everything an import produces: the node tree, default poses, variants, baked animations
+ * and the generated resource pack files. Files are keyed by a hash of the source file, the BIL version and the
+ * settings that affect baking, and are memory-mapped when read. A model is only imported again when its key changes.
+ */
+public class BakedModelCache {
+    private static final int MAGIC = 0x42494C43; // "BILC"
+    private static final int FORMAT_VERSION = 2;
+    private static final Path CACHE_DIR = FabricLoader.getInstance().getConfigDir().resolve("bil").resolve("cache");
+
+    /**
+     * Returns the cache key of a model source file.
+     */
+    public static String key(byte[] source) {
+        ModConfig config = ModConfig.getInstance();
+        String version = FabricLoader.getInstance().getModContainer("bil").map(container -> container.getMetadata().getVersion().getFriendlyString()).orElse("unknown");
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(source)) + "|" + version + "|" + FORMAT_VERSION + "|" + config.poseEpsilon + "|" + config.interpolationDuration + "|" + config.liveMolangChannels;
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static Path path(String name) {
+        return CACHE_DIR.resolve(name.replaceAll("[^a-zA-Z0-9_.-]", "_") + ".bin");
+    }
+
+    /**
+     * Reads the cached model with the given name, or returns null if there is no cache file for the given key.
+     * The resource pack files and models of the cached model are registered again.
+     */
+    @Nullable
+    public static Model read(String name, String key) {
+        Path path = path(name);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        CachedModel cachedModel;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || !readString(buffer).equals(key)) {
+                return null;
+            }
+            cachedModel = new Reader(buffer).readModel();
+        } catch (Throwable throwable) {
+            BIL.LOGGER.warn("Failed to read cached model {}, importing it again", name, throwable);
+            return null;
+        }
+
+        // Only registered once the whole file was read, a failed read leaves nothing behind
+        return cachedModel.register();
+    }
+
+    /**
+     * Writes the model and the resource pack files that were generated for it to the cache.
+     */
+    public static void write(String name, String key, Model model, Map<ResourceLocation, byte[]> assets) {
+        Path path = path(name);
+        try {
+            Files.createDirectories(CACHE_DIR);
+            Path tempPath = Files.createTempFile(CACHE_DIR, "model", ".tmp");
+
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                writeString(output, key);
+                new Writer(output).writeModel(model, assets);
+            }
+
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Throwable throwable) {
+            BIL.LOGGER.warn("Failed to write cached model {}", name, throwable);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record Writer(DataOutputStream output) {
+        private void writeModel(Model model, Map<ResourceLocation, byte[]> assets) throws IOException {
+            this.output.writeInt(assets.size());
+            for (Map.Entry<ResourceLocation, byte[]> entry : assets.entrySet()) {
+                writeString(this.output, entry.getKey().toString());
+                this.output.writeInt(entry.getValue().length);
+                this.output.write(entry.getValue());
+            }
+
+            // Nodes are written by index, parents always have a lower index than their children.
+            Node[] nodes = new Node[model.nodeMap().size()];
+            for (Node node : model.nodeMap().values()) {
+                nodes[node.index()] = node;
+            }
+
+            this.output.writeInt(nodes.length);
+            for (Node node : nodes) {
+                this.writeNode(node);
+            }
+
+            this.output.writeInt(model.defaultPose().size());
+            for (Map.Entry<UUID, Pose> entry : model.defaultPose().entrySet()) {
+                this.writeUuid(entry.getKey());
+                this.writePose(entry.getValue());
+            }
+
+            this.output.writeInt(model.variants().size());
+            for (Variant variant : model.variants().values()) {
+                this.writeVariant(variant);
+            }
+
+            this.output.writeInt(model.animations().size());
+            for (Map.Entry<String, Animation> entry : model.animations().entrySet()) {
+                writeString(this.output, entry.getKey());
+                this.writeAnimation(entry.getValue());
+            }
+
+            Vec2 size = model.size();
+            this.output.writeBoolean(size != null);
+            if (size != null) {
+                this.output.writeFloat(size.x);
+                this.output.writeFloat(size.y);
+            }
+        }
+
+        private void writeNode(Node node) throws IOException {
+            this.output.writeByte(node.type().ordinal());
+            this.output.writeInt(node.parent() != null ? node.parent().index() : -1);
+            writeString(this.output, node.name());
+            this.writeUuid(node.uuid());
+
+            Node.Transform transform = node.transform();
+            this.writeVector(transform.origin());
+            this.writeQuaternion(transform.rotation());
+            this.output.writeFloat(transform.scale());
+            float[] matrix = transform.globalTransform().get(new float[16]);
+            for (float value : matrix) {
+                this.output.writeFloat(value);
+            }
+
+            this.writeModelData(node.modelData());
+        }
+
+        private void writeModelData(@Nullable PolymerModelData modelData) throws IOException {
+            this.output.writeBoolean(modelData != null);
+            if (modelData != null) {
+                writeString(this.output, BuiltInRegistries.ITEM.getKey(modelData.item()).toString());
+                writeString(this.output, modelData.modelPath().toString());
+            }
+        }
+
+        private void writeVariant(Variant variant) throws IOException {
+            writeString(this.output, variant.name());
+            this.writeUuid(variant.uuid());
+
+            this.output.writeInt(variant.models().size());
+            for (Map.Entry<UUID, PolymerModelData> entry : variant.models().entrySet()) {
+                this.writeUuid(entry.getKey());
+                this.writeModelData(entry.getValue());
+            }
+
+            this.writeUuids(variant.affectedBones());
+            this.output.writeBoolean(variant.affectedBonesIsAWhitelist());
+        }
+
+        private void writeAnimation(Animation animation) throws IOException {
+            this.output.writeInt(animation.startDelay());
+            this.output.writeInt(animation.loopDelay());
+            this.output.writeInt(animation.duration());
+            this.output.writeByte(animation.loopMode().ordinal());
+            this.writeUuids(animation.affectedBones());
+            this.output.writeBoolean(animation.affectedBonesIsAWhitelist());
+
+            // Tracks come first, frames are created with a view of their poses
+            this.output.writeInt(animation.poseTracks().length);
+            for (PoseTrack track : animation.poseTracks()) {
+                this.output.writeBoolean(track != null);
+                if (track != null) {
+                    this.writeUuid(track.uuid());
+                    track.write(this.output);
+                }
+            }
+
+            this.output.writeInt(animation.frames().length);
+            for (Frame frame : animation.frames()) {
+                this.writeFrame(frame);
+            }
+        }
+
+        private void writeFrame(Frame frame) throws IOException {
+            this.output.writeFloat(frame.time());
+
+            Frame.Variant variant = frame.variant();
+            this.output.writeBoolean(variant != null);
+            if (variant != null) {
+                this.writeUuid(variant.uuid());
+                this.writeCommands(variant.conditions());
+            }
+
+            Frame.Commands commands = frame.commands();
+            this.output.writeBoolean(commands != null);
+            if (commands != null) {
+                this.writeCommands(commands.commands());
+                this.writeCommands(commands.conditions());
+            }
+
+            SoundEvent soundEffect = frame.soundEffect();
+            this.output.writeBoolean(soundEffect != null);
+            if (soundEffect != null) {
+                writeString(this.output, soundEffect.getLocation().toString());
+            }
+        }
+
+        private void writeCommands(@Nullable ParsedCommand[] commands) throws IOException {
+            this.output.writeInt(commands != null ? commands.length : -1);
+            if (commands != null) {
+                for (ParsedCommand command : commands) {
+                    writeString(this.output, command.command());
+                }
+            }
+        }
+
+        private void writePose(Pose pose) throws IOException {
+            this.writeVector(pose.readOnlyTranslation());
+            this.writeVector(pose.readOnlyScale());
+            this.writeQuaternion(pose.readOnlyLeftRotation());
+            this.writeQuaternion(pose.readOnlyRightRotation());
+        }
+
+        private void writeVector(Vector3fc vector) throws IOException {
+            this.output.writeFloat(vector.x());
+            this.output.writeFloat(vector.y());
+            this.output.writeFloat(vector.z());
+        }
+
+        private void writeQuaternion(Quaternionfc quaternion) throws IOException {
+            this.output.writeFloat(quaternion.x());
+            this.output.writeFloat(quaternion.y());
+            this.output.writeFloat(quaternion.z());
+            this.output.writeFloat(quaternion.w());
+        }
+
+        private void writeUuids(ReferenceOpenHashSet<UUID> uuids) throws IOException {
+            this.output.writeInt(uuids.size());
+            for (UUID uuid : uuids) {
+                this.writeUuid(uuid);
+            }
+        }
+
+        private void writeUuid(UUID uuid) throws IOException {
+            this.output.writeLong(uuid.getMostSignificantBits());
+            this.output.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer buffer;
+        // Bones are looked up by reference, so every uuid of the model has to be the same instance.
+        private final Object2ObjectOpenHashMap<UUID, UUID> uuids = new Object2ObjectOpenHashMap<>();
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private CachedModel readModel() {
+            int assetCount = this.buffer.getInt();
+            Map<ResourceLocation, byte[]> assets = new Object2ObjectLinkedOpenHashMap<>(assetCount);
+            for (int i = 0; i < assetCount; i++) {
+                ResourceLocation location = new ResourceLocation(readString(this.buffer));
+                byte[] bytes = new byte[this.buffer.getInt()];
+                this.buffer.get(bytes);
+                assets.put(location, bytes);
+            }
+
+            CachedNode[] nodes = new CachedNode[this.buffer.getInt()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = this.readNode();
+            }
+
+            int poseCount = this.buffer.getInt();
+            Reference2ObjectOpenHashMap<UUID, Pose> defaultPose = new Reference2ObjectOpenHashMap<>(poseCount);
+            for (int i = 0; i < poseCount; i++) {
+                defaultPose.put(this.readUuid(), this.readPose());
+            }
+
+            CachedVariant[] variants = new CachedVariant[this.buffer.getInt()];
+            for (int i = 0; i < variants.length; i++) {
+                variants[i] = this.readVariant();
+            }
+
+            int animationCount = this.buffer.getInt();
+            Object2ObjectOpenHashMap<String, Animation> animations = new Object2ObjectOpenHashMap<>(animationCount);
+            for (int i = 0; i < animationCount; i++) {
+                String name = readString(this.buffer);
+                animations.put(name, this.readAnimation());
+            }
+
+            Vec2 size = this.buffer.get() != 0 ? new Vec2(this.buffer.getFloat(), this.buffer.getFloat()) : null;
+            return new CachedModel(assets, nodes, defaultPose, variants, animations, size);
+        }
+
+        private CachedNode readNode() {
+            Node.NodeType type = Node.NodeType.values()[this.buffer.get()];
+            int parentIndex = this.buffer.getInt();
+            String name = readString(this.buffer);
+            UUID uuid = this.readUuid();
+
+            Vector3f origin = this.readVector();
+            Quaternionf rotation = this.readQuaternion();
+            float scale = this.buffer.getFloat();
+            float[] matrix = new float[16];
+            for (int i = 0; i < matrix.length; i++) {
+                matrix[i] = this.buffer.getFloat();
+            }
+            Node.Transform transform = new Node.Transform(origin, rotation, scale, new Matrix4f().set(matrix));
+
+            return new CachedNode(type, parentIndex, name, uuid, transform, this.readModelData());
+        }
+
+        @Nullable
+        private ModelRequest readModelData() {
+            if (this.buffer.get() == 0) {
+                return null;
+            }
+
+            Item item = BuiltInRegistries.ITEM.get(new ResourceLocation(readString(this.buffer)));
+            ResourceLocation modelPath = new ResourceLocation(readString(this.buffer));
+            return new ModelRequest(item, modelPath);
+        }
+
+        private CachedVariant readVariant() {
+            String name = readString(this.buffer);
+            UUID uuid = this.readUuid();
+
+            int modelCount = this.buffer.getInt();
+            Object2ObjectOpenHashMap<UUID, ModelRequest> models = new Object2ObjectOpenHashMap<>(modelCount);
+            for (int i = 0; i < modelCount; i++) {
+                models.put(this.readUuid(), this.readModelData());
+            }
+
+            ReferenceOpenHashSet<UUID> affectedBones = this.readUuids();
+            boolean isWhitelist = this.buffer.get() != 0;
+            return new CachedVariant(name, uuid, models, affectedBones, isWhitelist);
+        }
+
+        private Animation readAnimation() {
+            int startDelay = this.buffer.getInt();
+            int loopDelay = this.buffer.getInt();
+            int duration = this.buffer.getInt();
+            Animation.LoopMode loopMode = Animation.LoopMode.values()[this.buffer.get()];
+            ReferenceOpenHashSet<UUID> affectedBones = this.readUuids();
+            boolean isWhitelist = this.buffer.get() != 0;
+
+            PoseTrack[] tracks = new PoseTrack[this.buffer.getInt()];
+            for (int i = 0; i < tracks.length; i++) {
+                if (this.buffer.get() != 0) {
+                    tracks[i] = PoseTrack.read(this.readUuid(), this.buffer);
+                }
+            }
+
+            Frame[] frames = new Frame[this.buffer.getInt()];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = this.readFrame(tracks, i);
+            }
+
+            return new Animation(frames, tracks, startDelay, loopDelay, duration, loopMode, affectedBones, isWhitelist);
+        }
+
+        private Frame readFrame(PoseTrack[] tracks, int frameIndex) {
+            float time = this.buffer.getFloat();
+
+            Frame.Variant variant = null;
+            if (this.buffer.get() != 0) {
+                variant = new Frame.Variant(this.readUuid(), this.readCommands());
+            }
+
+            Frame.Commands commands = null;
+            if (this.buffer.get() != 0) {
+                commands = new Frame.Commands(this.readCommands(), this.readCommands());
+            }
+
+            SoundEvent soundEffect = null;
+            if (this.buffer.get() != 0) {
+                soundEffect = BuiltInRegistries.SOUND_EVENT.get(new ResourceLocation(readString(this.buffer)));
+            }
+
+            return new Frame(time, Frame.poses(tracks, frameIndex), variant, commands, soundEffect);
+        }
+
+        @Nullable
+        private ParsedCommand[] readCommands() {
+            int count = this.buffer.getInt();
+            if (count < 0) {
+                return null;
+            }
+
+            String[] commands = new String[count];
+            for (int i = 0; i < count; i++) {
+                commands[i] = readString(this.buffer);
+            }
+            return CommandParser.of(commands);
+        }
+
+        private Pose readPose() {
+            return new Pose(this.readVector(), this.readVector(), this.readQuaternion(), this.readQuaternion());
+        }
+
+        private Vector3f readVector() {
+            return new Vector3f(this.buffer.getFloat(), this.buffer.getFloat(), this.buffer.getFloat());
+        }
+
+        private Quaternionf readQuaternion() {
+            return new Quaternionf(this.buffer.getFloat(), this.buffer.getFloat(), this.buffer.getFloat(), this.buffer.getFloat());
+        }
+
+        private ReferenceOpenHashSet<UUID> readUuids() {
+            int count = this.buffer.getInt();
+            ReferenceOpenHashSet<UUID> uuids = new ReferenceOpenHashSet<>(count);
+            for (int i = 0; i < count; i++) {
+                uuids.add(this.readUuid());
+            }
+            return uuids;
+        }
+
+        private UUID readUuid() {
+            UUID uuid = new UUID(this.buffer.getLong(), this.buffer.getLong());
+            return this.uuids.computeIfAbsent(uuid, key -> uuid);
+        }
+    }
+
+    /**
+     * Item model of a node or variant, requested from polymer once the cache file was read completely.
+     */
+    private record ModelRequest(Item item, ResourceLocation modelPath) {
+    }
+
+    private record CachedNode(Node.NodeType type, int parentIndex, String name, UUID uuid, Node.Transform transform, @Nullable ModelRequest modelData) {
+    }
+
+    private record CachedVariant(String name, UUID uuid, Map<UUID, ModelRequest> models, ReferenceOpenHashSet<UUID> affectedBones, boolean affectedBonesIsAWhitelist) {
+    }
+
+    /**
+     * Contents of a cache file that were decoded without registering anything yet.
+     */
+    private record CachedModel(Map<ResourceLocation, byte[]> assets, CachedNode[] nodes, Reference2ObjectOpenHashMap<UUID, Pose> defaultPose, CachedVariant[] variants, Object2ObjectOpenHashMap<String, Animation> animations, @Nullable Vec2 size) {
+        /**
+         * Adds the resource pack files to the resource pack, requests the item models and builds the model.
+         */
+        private Model register() {
+            this.assets.forEach(RPUtil::add);
+
+            Object2ObjectOpenHashMap<ModelRequest, PolymerModelData> requests = new Object2ObjectOpenHashMap<>();
+            Node[] nodes = new Node[this.nodes.length];
+            Object2ObjectOpenHashMap<UUID, Node> nodeMap = new Object2ObjectOpenHashMap<>(nodes.length);
+            for (int i = 0; i < nodes.length; i++) {
+                CachedNode node = this.nodes[i];
+                PolymerModelData modelData = request(requests, node.modelData);
+                Node parent = node.parentIndex >= 0 ? nodes[node.parentIndex] : null;
+                nodes[i] = new Node(node.type, parent, node.transform, node.name, node.uuid, i, BbModelImporter.createDefaultBoneDisplay(modelData), modelData);
+                nodeMap.put(node.uuid, nodes[i]);
+            }
+
+            Reference2ObjectOpenHashMap<UUID, Variant> variants = new Reference2ObjectOpenHashMap<>(this.variants.length);
+            for (CachedVariant variant : this.variants) {
+                Object2ObjectOpenHashMap<UUID, PolymerModelData> models = new Object2ObjectOpenHashMap<>(variant.models.size());
+                variant.models.forEach((uuid, modelData) -> models.put(uuid, request(requests, modelData)));
+                variants.put(variant.uuid, new Variant(variant.name, variant.uuid, models, variant.affectedBones, variant.affectedBonesIsAWhitelist));
+            }
+
+            return new Model(nodeMap, this.defaultPose, variants, this.animations, this.size);
+        }
+
+        @Nullable
+        private static PolymerModelData request(Map<ModelRequest, PolymerModelData> requests, @Nullable ModelRequest request) {
+            return request != null ? requests.computeIfAbsent(request, key -> PolymerResourcePackUtils.requestModel(key.item, key.modelPath)) : null;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package de.tomalbrc.bil.file.loader;
+
+import de.tomalbrc.bil.BIL;
+import de.tomalbrc.bil.core.model.Model;
+import de.tomalbrc.bil.core.model.Node;
+import de.tomalbrc.bil.file.bbmodel.BbModel;
+import de.tomalbrc.bil.file.importer.BbModelImporter;
+import de.tomalbrc.bil.file.importer.MolangPrecompiler;
+import de.tomalbrc.bil.util.ImportPool;
+import de.tomalbrc.bil.util.ModConfig;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Imports all bbmodel files of a directory at once.
+ * <p>
+ * Every model goes through the import stages as separate tasks on the shared {@link ImportPool}, so different models
+ * can be in different stages at the same time. Building nodes and adding textures to the resource pack is done for one
+ * model at a time, the other stages run in parallel. Models only start importing when their estimated heap use fits into
+ * {@code batch_import_memory_mb}. The time spent in each stage is logged per model and for the whole batch.
+ */
+public class BatchModelLoader {
+    private static final String EXTENSION = ".bbmodel";
+    // Rough heap use of an import relative to the size of its file, textures and the parsed model included.
+    private static final int MEMORY_PER_FILE_BYTE = 4;
+
+    /**
+     * Imports all bbmodel files in the given directory and its subdirectories. Blocks until all of them are done.
+     * <p>
+     * Models are named by their path relative to the directory, without the extension. Models that fail to import
+     * are logged and left out of the result.
+     */
+    public static Map<String, Model> loadDirectory(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(EXTENSION)).sorted().toList();
+        }
+
+        ModConfig config = ModConfig.getInstance();
+
+        // Permits are KiB of estimated heap use
+        int memoryBudget = Math.max(1, config.batchImportMemoryMb) * 1024;
+        Semaphore memory = new Semaphore(memoryBudget);
+
+        ForkJoinPool pool = ImportPool.getPool();
+
+        BbModelLoader loader = new BbModelLoader();
+        Map<String, Model> models = new ConcurrentHashMap<>();
+        AtomicLongArray stageTotals = new AtomicLongArray(Stage.values().length);
+        List<CompletableFuture<Void>> futures = new ObjectArrayList<>(files.size());
+        long start = System.nanoTime();
+
+        try {
+            for (Path file : files) {
+                String name = modelName(directory, file);
+                int permits = (int) Math.max(1, Math.min(memoryBudget, Files.size(file) * MEMORY_PER_FILE_BYTE / 1024));
+                memory.acquire(permits);
+
+                Import task = new Import(loader, name, file, stageTotals);
+                futures.add(CompletableFuture.runAsync(task::read, pool)
+                        .thenRunAsync(task::postProcess, pool)
+                        .thenRunAsync(task::importNodes, pool)
+                        .thenRunAsync(task::importAnimations, pool)
+                        .thenRunAsync(task::finish, pool)
+                        .whenComplete((result, throwable) -> {
+                            memory.release(permits);
+                            if (throwable != null) {
+                                BIL.LOGGER.error("Failed to import model {}", name, throwable);
+                            } else {
+                                models.put(name, task.result);
+                                BIL.LOGGER.info("Imported model {} in {}ms ({})", name, toMillis(task.total()), formatTimings(task.timings));
+                            }
+                        }));
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).handle((result, throwable) -> null).join();
+        }
+
+        long[] totals = new long[stageTotals.length()];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = stageTotals.get(i);
+        }
+        BIL.LOGGER.info("Imported {} of {} models from {} in {}ms, time per stage: {}", models.size(), files.size(), directory, toMillis(System.nanoTime() - start), formatTimings(totals));
+
+        return models;
+    }
+
+    private static String modelName(Path directory, Path file) {
+        String name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    private static String formatTimings(long[] timings) {
+        StringBuilder builder = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            if (!builder.isEmpty()) {
+                builder.append(", ");
+            }
+            builder.append(stage.name().toLowerCase(Locale.ROOT).replace('_', ' ')).append(' ').append(toMillis(timings[stage.ordinal()])).append("ms");
+        }
+        return builder.toString();
+    }
+
+    private enum Stage {
+        READ,
+        PARSE,
+        COMPILE,
+        POST_PROCESS,
+        NODES,
+        TEXTURES,
+        ANIMATIONS,
+        CACHE
+    }
+
+    /**
+     * State of a single model import. Every stage runs after the previous one has finished, never concurrently.
+     */
+    private static class Import {
+        private final BbModelLoader loader;
+        private final String name;
+        private final Path file;
+        private final AtomicLongArray stageTotals;
+        private final long[] timings = new long[Stage.values().length];
+
+        private String cacheKey;
+        private BbModel model;
+        private BbModelImporter importer;
+        private Object2ObjectOpenHashMap<UUID, Node> nodeMap;
+        private Model result;
+
+        private Import(BbModelLoader loader, String name, Path file, AtomicLongArray stageTotals) {
+            this.loader = loader;
+            this.name = name;
+            this.file = file;
+            this.stageTotals = stageTotals;
+        }
+
+        private void read() {
+            long start = System.nanoTime();
+            byte[] source;
+            try {
+                source = Files.readAllBytes(this.file);
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+
+            this.cacheKey = this.loader.cacheKey(source);
+            this.result = this.loader.loadCached(this.name, this.cacheKey);
+            start = this.record(Stage.READ, start);
+
+            if (this.result == null) {
+                try {
+                    this.model = this.loader.parse(this.name, source);
+                } catch (IOException exception) {
+                    throw new RuntimeException(exception);
+                }
+                this.record(Stage.PARSE, start);
+            }
+        }
+
+        private void postProcess() {
+            if (this.result == null) {
+                long start = System.nanoTime();
+                MolangPrecompiler.compile(this.model);
+                start = this.record(Stage.COMPILE, start);
+
+                this.loader.postProcess(this.model);
+                this.importer = this.loader.createImporter(this.model);
+                this.record(Stage.POST_PROCESS, start);
+            }
+        }
+
+        private void importNodes() {
+            if (this.result == null) {
+                synchronized (BbModelLoader.RESOURCE_PACK_LOCK) {
+                    long start = System.nanoTime();
+                    this.nodeMap = this.importer.importNodes();
+                    start = this.record(Stage.NODES, start);
+
+                    this.importer.importTextures();
+                    this.record(Stage.TEXTURES, start);
+                }
+            }
+        }
+
+        private void importAnimations() {
+            if (this.result == null) {
+                long start = System.nanoTime();
+                this.result = this.importer.importModel(this.nodeMap);
+                this.record(Stage.ANIMATIONS, start);
+            }
+        }
+
+        private void finish() {
+            // Models loaded from the cache have no importer
+            if (this.importer != null) {
+                long start = System.nanoTime();
+                this.loader.finish(this.name, this.cacheKey, this.result, this.importer);
+                this.record(Stage.CACHE, start);
+            }
+
+            this.model = null;
+            this.importer = null;
+            this.nodeMap = null;
+        }
+
+        private long record(Stage stage, long start) {
+            long end = System.nanoTime();
+            this.timings[stage.ordinal()] += end - start;
+            this.stageTotals.addAndGet(stage.ordinal(), end - start);
+            return end;
+        }
+
+        private long total() {
+            long total = 0;
+            for (long timing : this.timings) {
+                total += timing;
+            }
+            return total;
+        }
+    }
+}
@@ -2,29 +2,53 @@ package de.tomalbrc.bil.file.loader;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
+import de.tomalbrc.bil.BIL;
+import de.tomalbrc.bil.core.model.Animation;
 import de.tomalbrc.bil.core.model.Model;
+import de.tomalbrc.bil.core.model.Node;
+import de.tomalbrc.bil.core.model.PoseTrack;
 import de.tomalbrc.bil.file.bbmodel.*;
 import de.tomalbrc.bil.file.extra.BbVariablePlaceholders;
 import de.tomalbrc.bil.file.importer.BbModelImporter;
+import de.tomalbrc.bil.file.importer.MolangPrecompiler;
 import de.tomalbrc.bil.json.BbVariablePlaceholdersDeserializer;
 import de.tomalbrc.bil.json.ChildEntryDeserializer;
 import de.tomalbrc.bil.json.DataPointValueDeserializer;
 import de.tomalbrc.bil.json.JSON;
+import de.tomalbrc.bil.util.ModConfig;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Vector2i;
 import org.joml.Vector3f;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
 
 public class BbModelLoader implements ModelLoader {
-    static Gson GSON = JSON.GENERIC_BUILDER
+    /**
+     * @deprecated Models are read by {@link BbModelReader}. UUIDs read by this Gson are interned in the deprecated
+     * global table, not in the table of a load. It will be removed in a future release.
+     */
+    @Deprecated
+    static Gson GSON = JSON.GENERIC_BUILDER.create().newBuilder()
             .registerTypeAdapter(BbOutliner.ChildEntry.class, new ChildEntryDeserializer())
             .registerTypeAdapter(BbKeyframe.DataPointValue.class, new DataPointValueDeserializer())
             .registerTypeAdapter(BbVariablePlaceholders.class, new BbVariablePlaceholdersDeserializer())
             .setLenient()
             .create();
 
+    // Item model requests and resource pack generation of imports are not thread-safe, they are done one model at a time.
+    static final Object RESOURCE_PACK_LOCK = new Object();
+    private static final String CACHE_PREFIX = "bbmodel/";
+
+    // Cached models are rebuilt with the default bone displays, loaders that create their own importer don't use the cache
+    private final boolean cacheable = !overridesCreateImporter(this.getClass());
+
     private void rescaleUV(Vector2i res, BbElement element) {
         for (var entry: element.faces.entrySet()) {
             // re-map uv based on resolution
@@ -40,7 +64,7 @@ public class BbModelLoader implements ModelLoader {
         element.to.add(element.inflate, element.inflate, element.inflate);
     }
 
-    private void postProcess(BbModel model) {
+    void postProcess(BbModel model) {
         for (BbElement element: model.elements) {
             this.rescaleUV(model.resolution, element);
             this.inflaceElement(element);
@@ -81,24 +105,121 @@ public class BbModelLoader implements ModelLoader {
         }
     }
 
+    private void logPoseMemory(String name, Model model) {
+        long frameCount = 0;
+        long poseCount = 0;
+        long packedSize = 0;
+        for (Animation animation : model.animations().values()) {
+            for (PoseTrack track : animation.poseTracks()) {
+                if (track != null) {
+                    for (int i = 0; i < track.frameCount(); i++) {
+                        if (track.hasPose(i)) {
+                            frameCount++;
+                        }
+                    }
+                    poseCount += track.poseCount();
+                    packedSize += track.sizeInBytes();
+                }
+            }
+        }
+
+        long objectSize = frameCount * PoseTrack.POSE_OBJECT_SIZE;
+        BIL.LOGGER.info("Loaded model {}: kept {} of {} baked poses, packed into {} KiB, ~{} KiB less than pose objects", name, poseCount, frameCount, packedSize / 1024, Math.max(0, objectSize - packedSize) / 1024);
+    }
+
     @Override
     public Model load(String name, InputStream input) throws JsonParseException {
-        try (Reader reader = new InputStreamReader(input)) {
-            BbModel model = GSON.fromJson(reader, BbModel.class);
-
-            if (model.modelIdentifier == null) {
-                model.modelIdentifier = name;
+        try (input) {
+            byte[] source = input.readAllBytes();
+            String cacheKey = this.cacheKey(source);
+
+            Model cachedModel = this.loadCached(name, cacheKey);
+            if (cachedModel != null) {
+                BIL.LOGGER.info("Loaded model {} from cache", name);
+                return cachedModel;
             }
 
+            BbModel model = this.parse(name, source);
+            MolangPrecompiler.compile(model);
             this.postProcess(model);
 
-            Model newModel = new BbModelImporter(model).importModel();
+            BbModelImporter importer = this.createImporter(model);
+            Object2ObjectOpenHashMap<UUID, Node> nodeMap;
+            synchronized (RESOURCE_PACK_LOCK) {
+                nodeMap = importer.importNodes();
+                importer.importTextures();
+            }
+
+            Model newModel = importer.importModel(nodeMap);
+            this.finish(name, cacheKey, newModel, importer);
             return newModel;
         } catch (Throwable throwable) {
             throw new JsonParseException("Failed to parse: " + name, throwable);
         }
     }
 
+    /**
+     * Creates the importer of a parsed model. Override to customize the import, for example the bone displays.
+     * <p>
+     * The baked model cache only stores the item models of bones and creates their displays with
+     * {@link BbModelImporter#createDefaultBoneDisplay}, so loaders overriding this method always import the model.
+     */
+    protected BbModelImporter createImporter(BbModel model) {
+        return new BbModelImporter(model);
+    }
+
+    /**
+     * Returns the key of the source in the baked model cache, or null if the cache is disabled.
+     */
+    @Nullable
+    String cacheKey(byte[] source) {
+        return this.cacheable && ModConfig.getInstance().bakedModelCache ? BakedModelCache.key(source) : null;
+    }
+
+    private static boolean overridesCreateImporter(Class<?> type) {
+        for (Class<?> current = type; current != BbModelLoader.class; current = current.getSuperclass()) {
+            try {
+                current.getDeclaredMethod("createImporter", BbModel.class);
+                return true;
+            } catch (NoSuchMethodException ignored) {
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    Model loadCached(String name, @Nullable String cacheKey) {
+        if (cacheKey == null) {
+            return null;
+        }
+
+        // Cached models request their item models again
+        synchronized (RESOURCE_PACK_LOCK) {
+            return BakedModelCache.read(CACHE_PREFIX + name, cacheKey);
+        }
+    }
+
+    BbModel parse(String name, byte[] source) throws IOException {
+        BbModel model;
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(source), StandardCharsets.UTF_8)) {
+            model = BbModelReader.read(reader);
+        }
+
+        if (model.modelIdentifier == null) {
+            model.modelIdentifier = name;
+        }
+        return model;
+    }
+
+    void finish(String name, @Nullable String cacheKey, Model model, BbModelImporter importer) {
+        this.logPoseMemory(name, model);
+
+        // Compiled molang channels can't be written to the cache, those models are imported on every start.
+        if (cacheKey != null && model.animations().values().stream().noneMatch(Animation::hasMolangTracks)) {
+            BakedModelCache.write(CACHE_PREFIX + name, cacheKey, model, importer.getAssets());
+        }
+    }
+
     public Model load(String name) throws IllegalArgumentException, JsonParseException {
         String path = String.format("/bbmodel/%s.bbmodel", name);
         InputStream input = BbModelLoader.class.getResourceAsStream(path);
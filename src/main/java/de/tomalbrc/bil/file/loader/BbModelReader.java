@@ -0,0 +1,441 @@
+package de.tomalbrc.bil.file.loader;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import de.tomalbrc.bil.core.model.Animation;
+import de.tomalbrc.bil.file.bbmodel.*;
+import de.tomalbrc.bil.file.extra.BbVariablePlaceholders;
+import de.tomalbrc.bil.file.extra.interpolation.Interpolation;
+import de.tomalbrc.bil.json.UuidInterner;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector2i;
+import org.joml.Vector3f;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Streaming reader for .bbmodel files.
+ * <p>
+ * Reads the file token by token into the {@link BbModel} classes, without building an intermediate json tree.
+ * Fields that are not used for importing are skipped, and texture sources are decoded to {@link BbTexture#data}
+ * as soon as they are read, so the base64 strings of a model are never all held at once.
+ */
+public class BbModelReader {
+    private static final String BASE64_PREFIX = "base64,";
+
+    private final JsonReader reader;
+    private final UuidInterner uuids = new UuidInterner();
+
+    private BbModelReader(Reader reader) {
+        this.reader = new JsonReader(reader);
+        this.reader.setLenient(true);
+    }
+
+    public static BbModel read(Reader reader) throws IOException {
+        return new BbModelReader(reader).readModel();
+    }
+
+    private BbModel readModel() throws IOException {
+        BbModel model = new BbModel();
+        model.uuids = this.uuids;
+
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            switch (this.reader.nextName()) {
+                case "name" -> model.name = this.readString();
+                case "model_identifier" -> model.modelIdentifier = this.readString();
+                case "resolution" -> model.resolution = this.readResolution();
+                case "elements" -> model.elements = this.readList(this::readElement);
+                case "outliner" -> model.outliner = this.readList(this::readChildEntry);
+                case "textures" -> model.textures = this.readList(this::readTexture);
+                case "animations" -> model.animations = this.readList(this::readAnimation);
+                case "animation_variable_placeholders" -> {
+                    String placeholders = this.readString();
+                    model.animationVariablePlaceholders = placeholders != null ? new BbVariablePlaceholders(placeholders) : null;
+                }
+                default -> this.reader.skipValue();
+            }
+        }
+        this.reader.endObject();
+
+        if (model.elements == null) model.elements = new ObjectArrayList<>();
+        if (model.outliner == null) model.outliner = new ObjectArrayList<>();
+        if (model.textures == null) model.textures = new ObjectArrayList<>();
+        if (model.animations == null) model.animations = new ObjectArrayList<>();
+
+        return model;
+    }
+
+    private BbElement readElement() throws IOException {
+        BbElement element = new BbElement();
+
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            switch (this.reader.nextName()) {
+                case "name" -> element.name = this.readString();
+                case "box_uv" -> element.boxUv = this.readBoolean();
+                case "rescale" -> element.rescale = this.readBoolean();
+                case "from" -> element.from = this.readVector3f();
+                case "to" -> element.to = this.readVector3f();
+                case "rotation" -> element.rotation = this.readVector3f();
+                case "inflate" -> element.inflate = this.readFloat();
+                case "origin" -> element.origin = this.readVector3f();
+                case "faces" -> element.faces = this.readMap(this::readFace);
+                case "type" -> element.type = this.readString();
+                case "uuid" -> element.uuid = this.readUuid();
+                default -> this.reader.skipValue();
+            }
+        }
+        this.reader.endObject();
+
+        return element;
+    }
+
+    private BbFace readFace() throws IOException {
+        BbFace face = new BbFace();
+
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            switch (this.reader.nextName()) {
+                case "uv" -> face.uv = this.readList(this::readFloat);
+                case "texture" -> face.texture = this.readInt();
+                case "tintindex" -> face.tintindex = this.readInt();
+                case "cullface" -> face.cullface = this.readString();
+                default -> this.reader.skipValue();
+            }
+        }
+        this.reader.endObject();
+
+        return face;
+    }
+
+    private BbOutliner.ChildEntry readChildEntry() throws IOException {
+        BbOutliner.ChildEntry entry = new BbOutliner.ChildEntry();
+        if (this.reader.peek() == JsonToken.BEGIN_OBJECT) {
+            entry.outliner = this.readOutliner();
+        } else {
+            entry.uuid = this.readUuid();
+        }
+        return entry;
+    }
+
+    private BbOutliner readOutliner() throws IOException {
+        BbOutliner outliner = new BbOutliner();
+
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            switch (this.reader.nextName()) {
+                case "name" -> outliner.name = this.readString();
+                case "origin" -> outliner.origin = this.readVector3f();
+                case "rotation" -> outliner.rotation = this.readVector3f();
+                case "scale" -> outliner.scale = this.readFloat();
+                case "nbt" -> outliner.nbt = this.readString();
+                case "uuid" -> outliner.uuid = this.readUuid();
+                case "export" -> outliner.export = this.readBoolean();
+                case "visibility" -> outliner.visibility = this.readBoolean();
+                case "children" -> outliner.children = this.readList(this::readChildEntry);
+                default -> this.reader.skipValue();
+            }
+        }
+        this.reader.endObject();
+
+        if (outliner.origin == null) outliner.origin = new Vector3f();
+        if (outliner.rotation == null) outliner.rotation = new Vector3f();
+        if (outliner.children == null) outliner.children = new ObjectArrayList<>();
+
+        return outliner;
+    }
+
+    private BbTexture readTexture() throws IOException {
+        BbTexture texture = new BbTexture();
+
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            switch (this.reader.nextName()) {
+                case "path" -> texture.path = this.readString();
+                case "name" -> texture.name = this.readString();
+                case "folder" -> texture.folder = this.readString();
+                case "namespace" -> texture.namespace = this.readString();
+                case "id" -> texture.id = this.readString();
+                case "width" -> texture.width = this.readInt();
+                case "height" -> texture.height = this.readInt();
+                case "uv_width" -> texture.uvWidth = this.readInt();
+                case "uv_height" -> texture.uvHeight = this.readInt();
+                case "uuid" -> texture.uuid = this.readUuid();
+                case "source" -> texture.data = this.readBase64();
+                default -> this.reader.skipValue();
+            }
+        }
+        this.reader.endObject();
+
+        return texture;
+    }
+
+    private BbAnimation readAnimation() throws IOException {
+        BbAnimation animation = new BbAnimation();
+
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            switch (this.reader.nextName()) {
+                case "uuid" -> animation.uuid = this.readUuid();
+                case "name" -> animation.name = this.readString();
+                case "loop" -> animation.loop = this.readEnum(Animation.LoopMode.class);
+                case "override" -> animation.override = this.readBoolean();
+                case "length" -> animation.length = this.readFloat();
+                case "snapping" -> animation.snapping = this.readInt();
+                case "anim_time_update" -> animation.animTimeUpdate = this.readString();
+                case "blend_weight" -> animation.blendWeight = this.readString();
+                case "start_delay" -> animation.startDelay = this.readString();
+                case "loop_delay" -> animation.loopDelay = this.readString();
+                case "animators" -> {
+                    Map<UUID, BbAnimator> animators = new Object2ObjectOpenHashMap<>();
+                    this.reader.beginObject();
+                    while (this.reader.hasNext()) {
+                        UUID uuid = this.uuids.intern(this.reader.nextName());
+                        animators.put(uuid, this.readAnimator());
+                    }
+                    this.reader.endObject();
+                    animation.animators = animators;
+                }
+                default -> this.reader.skipValue();
+            }
+        }
+        this.reader.endObject();
+
+        if (animation.animators == null) animation.animators = new Object2ObjectOpenHashMap<>();
+
+        return animation;
+    }
+
+    private BbAnimator readAnimator() throws IOException {
+        BbAnimator animator = new BbAnimator();
+
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            switch (this.reader.nextName()) {
+                case "name" -> animator.name = this.readString();
+                case "type" -> animator.type = this.readEnum(BbAnimator.Type.class);
+                case "keyframes" -> animator.keyframes = this.readList(this::readKeyframe);
+                default -> this.reader.skipValue();
+            }
+        }
+        this.reader.endObject();
+
+        return animator;
+    }
+
+    private BbKeyframe readKeyframe() throws IOException {
+        BbKeyframe keyframe = new BbKeyframe();
+
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            switch (this.reader.nextName()) {
+                case "channel" -> keyframe.channel = this.readEnum(BbKeyframe.Channel.class);
+                case "data_points" -> keyframe.dataPoints = this.readList(() -> this.readMap(this::readDataPointValue));
+                case "uuid" -> keyframe.uuid = this.readUuid();
+                case "time" -> keyframe.time = this.readFloat();
+                case "interpolation" -> keyframe.interpolation = this.readInterpolation();
+                case "bezier_linked" -> keyframe.bezierLinked = this.readBoolean();
+                case "bezier_left_time" -> keyframe.bezierLeftTime = this.readVector3f();
+                case "bezier_left_value" -> keyframe.bezierLeftValue = this.readVector3f();
+                case "bezier_right_time" -> keyframe.bezierRightTime = this.readVector3f();
+                case "bezier_right_value" -> keyframe.bezierRightValue = this.readVector3f();
+                default -> this.reader.skipValue();
+            }
+        }
+        this.reader.endObject();
+
+        return keyframe;
+    }
+
+    @Nullable
+    private BbKeyframe.DataPointValue readDataPointValue() throws IOException {
+        BbKeyframe.DataPointValue value = new BbKeyframe.DataPointValue();
+        switch (this.reader.peek()) {
+            case NUMBER -> value.setValue((float) this.reader.nextDouble());
+            case STRING -> value.setStringValue(this.reader.nextString());
+            case NULL -> {
+                this.reader.nextNull();
+                return null;
+            }
+            default -> this.reader.skipValue();
+        }
+        return value;
+    }
+
+    @Nullable
+    private Interpolation readInterpolation() throws IOException {
+        String name = this.readString();
+        if (name == null) {
+            return null;
+        }
+
+        return switch (name) {
+            case "catmullrom" -> Interpolation.SMOOTH;
+            case "linear" -> Interpolation.LINEAR;
+            case "step" -> Interpolation.STEP;
+            case "bezier" -> Interpolation.BEZIER;
+            default -> null;
+        };
+    }
+
+    private Vector2i readResolution() throws IOException {
+        Vector2i resolution = new Vector2i();
+        if (this.reader.peek() == JsonToken.BEGIN_ARRAY) {
+            this.reader.beginArray();
+            resolution.x = this.reader.nextInt();
+            resolution.y = this.reader.nextInt();
+            while (this.reader.hasNext()) {
+                this.reader.skipValue();
+            }
+            this.reader.endArray();
+        } else {
+            this.reader.beginObject();
+            while (this.reader.hasNext()) {
+                switch (this.reader.nextName()) {
+                    case "width" -> resolution.x = this.reader.nextInt();
+                    case "height" -> resolution.y = this.reader.nextInt();
+                    default -> this.reader.skipValue();
+                }
+            }
+            this.reader.endObject();
+        }
+        return resolution;
+    }
+
+    @Nullable
+    private Vector3f readVector3f() throws IOException {
+        if (this.reader.peek() == JsonToken.NULL) {
+            this.reader.nextNull();
+            return null;
+        }
+
+        this.reader.beginArray();
+        Vector3f vector = new Vector3f((float) this.reader.nextDouble(), (float) this.reader.nextDouble(), (float) this.reader.nextDouble());
+        while (this.reader.hasNext()) {
+            this.reader.skipValue();
+        }
+        this.reader.endArray();
+        return vector;
+    }
+
+    @Nullable
+    private byte[] readBase64() throws IOException {
+        String source = this.readString();
+        if (source == null) {
+            return null;
+        }
+
+        // Skips the data url prefix, "data:image/png;base64,"
+        int start = source.startsWith("data:") ? source.indexOf(BASE64_PREFIX) + BASE64_PREFIX.length() : 0;
+        return Base64.getDecoder().decode(start > 0 ? source.substring(start) : source);
+    }
+
+    @Nullable
+    private UUID readUuid() throws IOException {
+        String string = this.readString();
+        return string != null ? this.uuids.intern(string) : null;
+    }
+
+    @Nullable
+    private <T extends Enum<T>> T readEnum(Class<T> type) throws IOException {
+        String name = this.readString();
+        if (name != null) {
+            for (T constant : type.getEnumConstants()) {
+                if (constant.name().equals(name)) {
+                    return constant;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private String readString() throws IOException {
+        JsonToken token = this.reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return this.reader.nextString();
+        } else if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(this.reader.nextBoolean());
+        }
+
+        this.reader.skipValue();
+        return null;
+    }
+
+    private boolean readBoolean() throws IOException {
+        if (this.reader.peek() == JsonToken.BOOLEAN) {
+            return this.reader.nextBoolean();
+        }
+
+        this.reader.skipValue();
+        return false;
+    }
+
+    private float readFloat() throws IOException {
+        JsonToken token = this.reader.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            return (float) this.reader.nextDouble();
+        }
+
+        this.reader.skipValue();
+        return 0;
+    }
+
+    private int readInt() throws IOException {
+        JsonToken token = this.reader.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            return (int) this.reader.nextDouble();
+        }
+
+        this.reader.skipValue();
+        return 0;
+    }
+
+    private <T> List<T> readList(ValueReader<T> valueReader) throws IOException {
+        List<T> list = new ObjectArrayList<>();
+        if (this.reader.peek() != JsonToken.BEGIN_ARRAY) {
+            this.reader.skipValue();
+            return list;
+        }
+
+        this.reader.beginArray();
+        while (this.reader.hasNext()) {
+            list.add(valueReader.read());
+        }
+        this.reader.endArray();
+        return list;
+    }
+
+    private <T> Map<String, T> readMap(ValueReader<T> valueReader) throws IOException {
+        Map<String, T> map = new Object2ObjectLinkedOpenHashMap<>();
+        if (this.reader.peek() != JsonToken.BEGIN_OBJECT) {
+            this.reader.skipValue();
+            return map;
+        }
+
+        this.reader.beginObject();
+        while (this.reader.hasNext()) {
+            String name = this.reader.nextName();
+            T value = valueReader.read();
+            if (value != null) {
+                map.put(name, value);
+            }
+        }
+        this.reader.endObject();
+        return map;
+    }
+
+    @FunctionalInterface
+    private interface ValueReader<T> {
+        T read() throws IOException;
+    }
+}
@@ -0,0 +1,124 @@
+package de.tomalbrc.bil.file.loader;
+
+import de.tomalbrc.bil.BIL;
+import de.tomalbrc.bil.core.model.Animation;
+import de.tomalbrc.bil.core.model.Model;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads bbmodel files from the {@code /bbmodel/} resources once, in the background, and shares the resulting models.
+ * <p>
+ * Models are immutable after loading, so the same instance can be used by any number of holders.
+ * Loading happens on a single background thread, which keeps resource pack requests in order.
+ */
+public class ModelRegistry {
+    private static final Map<String, CompletableFuture<Model>> MODELS = new ConcurrentHashMap<>();
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "BIL Model Loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Returns the model with the given name, loading it in the background if it hasn't been requested before.
+     */
+    public static CompletableFuture<Model> get(String name) {
+        // Failed models are loaded again, so that they can be fixed without a restart.
+        return MODELS.compute(name, (key, future) -> future == null || future.isCompletedExceptionally() ? load(key) : future);
+    }
+
+    /**
+     * Returns the model with the given name if it has finished loading, or null otherwise.
+     */
+    @Nullable
+    public static Model getIfLoaded(String name) {
+        CompletableFuture<Model> future = MODELS.get(name);
+        return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /**
+     * Starts loading the given models in the background, for example during startup.
+     */
+    public static void preload(String... names) {
+        for (String name : names) {
+            get(name);
+        }
+    }
+
+    /**
+     * Imports all bbmodel files in the given directory in the background, see {@link BatchModelLoader#loadDirectory(Path)}.
+     * The models are registered by their path relative to the directory, without the extension.
+     */
+    public static CompletableFuture<Map<String, Model>> loadDirectory(Path directory) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, Model> models;
+            try {
+                models = BatchModelLoader.loadDirectory(directory);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+
+            models.forEach((name, model) -> MODELS.put(name, CompletableFuture.completedFuture(model)));
+            return models;
+        }, EXECUTOR);
+    }
+
+    /**
+     * Loads the model with the given name again. Holders that already use the old model keep it.
+     */
+    public static CompletableFuture<Model> reload(String name) {
+        CompletableFuture<Model> future = load(name);
+        MODELS.put(name, future);
+        return future;
+    }
+
+    /**
+     * Removes the model with the given name from the registry. Returns false if it wasn't requested before.
+     */
+    public static boolean unload(String name) {
+        return MODELS.remove(name) != null;
+    }
+
+    private static CompletableFuture<Model> load(String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            Model model = new BbModelLoader().load(name);
+            BIL.LOGGER.info("Loaded model {} in {}ms", name, (System.nanoTime() - start) / 1_000_000);
+            return model;
+        }, EXECUTOR);
+    }
+
+    public static Stats getStats() {
+        int loaded = 0;
+        int loading = 0;
+        long poseBytes = 0;
+        for (CompletableFuture<Model> future : MODELS.values()) {
+            if (!future.isDone()) {
+                loading++;
+            } else if (!future.isCompletedExceptionally()) {
+                loaded++;
+                for (Animation animation : future.join().animations().values()) {
+                    poseBytes += animation.sizeInBytes();
+                }
+            }
+        }
+        return new Stats(loaded, loading, poseBytes);
+    }
+
+    /**
+     * @param loaded    Number of models that finished loading.
+     * @param loading   Number of models that are still loading.
+     * @param poseBytes Approximate heap size of the baked poses of all loaded models.
+     */
+    public record Stats(int loaded, int loading, long poseBytes) {
+    }
+}
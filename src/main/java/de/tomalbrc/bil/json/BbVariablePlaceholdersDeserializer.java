@@ -8,6 +8,11 @@ import de.tomalbrc.bil.file.extra.BbVariablePlaceholders;
 
 import java.lang.reflect.Type;
 
+/**
+ * @deprecated Models are read by {@link de.tomalbrc.bil.file.loader.BbModelReader}, which doesn't use Gson.
+ * Kept for code that builds its own Gson for bbmodel files, it will be removed in a future release.
+ */
+@Deprecated
 public class BbVariablePlaceholdersDeserializer implements JsonDeserializer<BbVariablePlaceholders> {
     @Override
     public BbVariablePlaceholders deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext) throws JsonParseException {
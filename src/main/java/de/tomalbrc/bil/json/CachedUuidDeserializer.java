@@ -4,38 +4,63 @@ import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 
 import java.lang.reflect.Type;
 import java.util.UUID;
 
 /**
  * The purpose of this deserializer is to reuse matching UUIDs, so that we can use reference equality.
+ * <p>
+ * UUIDs are interned in the given table. Register a new deserializer with the table of the model on a Gson built
+ * for a single load, never on a shared builder.
+ * <p>
+ * Models loaded by BIL use a table per load. The deprecated global table is only used by {@link JSON#GENERIC_BUILDER}
+ * and the no-argument constructor, for code that still reads UUIDs through them. It is never cleared.
  */
 public class CachedUuidDeserializer implements JsonDeserializer<UUID> {
-    private static final Object2ObjectOpenHashMap<String, UUID> UUID_CACHE = new Object2ObjectOpenHashMap<>();
+    private static final UuidInterner GLOBAL_UUIDS = new UuidInterner();
 
+    private final UuidInterner uuids;
+
+    /**
+     * @deprecated Interns into the global table, which grows for the lifetime of the process.
+     * Use {@link #CachedUuidDeserializer(UuidInterner)} with a table per load.
+     */
+    @Deprecated
+    public CachedUuidDeserializer() {
+        this(GLOBAL_UUIDS);
+    }
+
+    /**
+     * Returns the UUID interned in the global table for the given string, or null.
+     *
+     * @deprecated UUIDs of models loaded by BIL are not in the global table. Use the {@link UuidInterner} of the load.
+     */
+    @Deprecated
     public static UUID get(String name) {
-        return UUID_CACHE.get(name);
+        return GLOBAL_UUIDS.get(name);
     }
+
+    /**
+     * Interns the given UUID in the global table, returning the previous one.
+     *
+     * @deprecated UUIDs of models loaded by BIL are not in the global table. Use the {@link UuidInterner} of the load.
+     */
+    @Deprecated
     public static UUID put(String name, UUID uuid) {
-        return UUID_CACHE.put(name, uuid);
+        return GLOBAL_UUIDS.put(name, uuid);
+    }
+
+    public CachedUuidDeserializer(UuidInterner uuids) {
+        this.uuids = uuids;
+    }
+
+    public UuidInterner getUuids() {
+        return this.uuids;
     }
 
     @Override
     public UUID deserialize(JsonElement element, Type type, JsonDeserializationContext context) throws JsonParseException {
-        String string = element.getAsString();
-        UUID uuid = UUID_CACHE.get(string);
-        if (uuid != null) {
-            return uuid;
-        }
-
-        try {
-            uuid = UUID.fromString(string);
-        } catch (IllegalArgumentException exception) {
-            uuid = UUID.randomUUID();
-        }
-        UUID_CACHE.put(string, uuid);
-        return uuid;
+        return this.uuids.intern(element.getAsString());
     }
 }
@@ -9,6 +9,11 @@ import de.tomalbrc.bil.file.bbmodel.BbOutliner;
 import java.lang.reflect.Type;
 import java.util.UUID;
 
+/**
+ * @deprecated Models are read by {@link de.tomalbrc.bil.file.loader.BbModelReader}, which doesn't use Gson.
+ * Kept for code that builds its own Gson for bbmodel files, it will be removed in a future release.
+ */
+@Deprecated
 public class ChildEntryDeserializer implements JsonDeserializer<BbOutliner.ChildEntry> {
     @Override
     public BbOutliner.ChildEntry deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext) throws JsonParseException {
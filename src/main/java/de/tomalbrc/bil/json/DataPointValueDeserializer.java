@@ -8,6 +8,11 @@ import de.tomalbrc.bil.file.bbmodel.BbKeyframe;
 
 import java.lang.reflect.Type;
 
+/**
+ * @deprecated Models are read by {@link de.tomalbrc.bil.file.loader.BbModelReader}, which doesn't use Gson.
+ * Kept for code that builds its own Gson for bbmodel files, it will be removed in a future release.
+ */
+@Deprecated
 public class DataPointValueDeserializer implements JsonDeserializer<BbKeyframe.DataPointValue> {
     @Override
     public BbKeyframe.DataPointValue deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext) throws JsonParseException {
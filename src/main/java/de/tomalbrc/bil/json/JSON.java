@@ -12,8 +12,15 @@ import org.joml.Vector3f;
 import java.util.UUID;
 
 public class JSON {
+    /**
+     * Shared builder with the adapters of BIL.
+     * <p>
+     * UUIDs are interned in a global table, which is deprecated and never cleared. BIL itself no longer reads
+     * models through this builder, so the UUIDs it reads are not the instances used by loaded models.
+     * Register a {@link CachedUuidDeserializer} with a table per load on a copy of the builder instead.
+     */
     public static final GsonBuilder GENERIC_BUILDER = new GsonBuilder()
-            // Reference equality
+            // Reference equality, deprecated global table
             .registerTypeAdapter(UUID.class, new CachedUuidDeserializer())
 
             // Custom deserializers
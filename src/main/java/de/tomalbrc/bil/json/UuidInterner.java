@@ -0,0 +1,50 @@
+package de.tomalbrc.bil.json;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Intern table for the UUIDs of a single model load, so that matching UUIDs are the same instance and can be
+ * compared by reference.
+ * <p>
+ * Strings that are not valid UUIDs, like the "effects" animator, get a random UUID that stays the same for the
+ * rest of the load. The table is safe to use from multiple threads, and is dropped together with the model it was
+ * created for.
+ */
+public class UuidInterner {
+    private final Map<String, UUID> uuids = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the UUID that was interned for the given string, or null if it hasn't been read in this load.
+     */
+    @Nullable
+    public UUID get(String string) {
+        return this.uuids.get(string);
+    }
+
+    /**
+     * Returns the interned UUID for the given string, creating it on first use.
+     */
+    public UUID intern(String string) {
+        return this.uuids.computeIfAbsent(string, UuidInterner::parse);
+    }
+
+    /**
+     * Replaces the UUID interned for the given string, returning the previous one.
+     */
+    @Nullable
+    UUID put(String string, UUID uuid) {
+        return this.uuids.put(string, uuid);
+    }
+
+    private static UUID parse(String string) {
+        try {
+            return UUID.fromString(string);
+        } catch (IllegalArgumentException exception) {
+            return UUID.randomUUID();
+        }
+    }
+}
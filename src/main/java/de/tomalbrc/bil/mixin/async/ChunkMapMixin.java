@@ -1,6 +1,7 @@
 package de.tomalbrc.bil.mixin.async;
 
 import de.tomalbrc.bil.core.holder.base.AbstractElementHolder;
+import de.tomalbrc.bil.util.AsyncTickScheduler;
 import de.tomalbrc.bil.util.IChunkMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import net.minecraft.server.level.ChunkMap;
@@ -11,7 +12,7 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinTask;
 
 @Mixin(value = ChunkMap.class, priority = 900)
 public class ChunkMapMixin implements IChunkMap {
@@ -19,7 +20,7 @@ public class ChunkMapMixin implements IChunkMap {
     private ObjectArrayList<AbstractElementHolder> bil$scheduledAsyncTicks = new ObjectArrayList<>();
     @Unique
     @Nullable
-    private CompletableFuture<Void> bil$asyncTickFuture;
+    private ForkJoinTask<Void> bil$asyncTickFuture;
 
     @Inject(method = "tick()V", at = @At("TAIL"))
     private void bil$afterTickEntityTrackers(CallbackInfo ci) {
@@ -30,11 +31,10 @@ public class ChunkMapMixin implements IChunkMap {
         }
 
         this.bil$scheduledAsyncTicks = new ObjectArrayList<>(holders.size());
-        this.bil$asyncTickFuture = CompletableFuture.runAsync(() -> {
-            for (AbstractElementHolder holder : holders) {
-                holder.asyncTick();
-            }
-        });
+        for (AbstractElementHolder holder : holders) {
+            holder.prepareAsyncTick();
+        }
+        this.bil$asyncTickFuture = AsyncTickScheduler.schedule(holders);
     }
 
     @Override
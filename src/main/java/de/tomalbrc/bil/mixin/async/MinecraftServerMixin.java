@@ -1,5 +1,7 @@
 package de.tomalbrc.bil.mixin.async;
 
+import de.tomalbrc.bil.core.model.FramePoseCache;
+import de.tomalbrc.bil.util.AsyncTickScheduler;
 import de.tomalbrc.bil.util.IChunkMap;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
@@ -29,8 +31,11 @@ public abstract class MinecraftServerMixin {
         // This way we can take advantage of suspending packet flushing, which gives a significant improvement in network performance and ping.
         // This will never realistically block the main thread, as these async intermediate ticks are done at the same time as entity ticks on the main thread,
         // which in any normal world will take far longer than the intermediate updates. This is just a safety measure.
+        long start = System.nanoTime();
         for (ServerLevel level : this.getAllLevels()) {
             IChunkMap.blockUntilAsyncTickFinished(level.getChunkSource().chunkMap);
         }
+        AsyncTickScheduler.finishTick(System.nanoTime() - start);
+        FramePoseCache.clear();
     }
 }
@@ -0,0 +1,168 @@
+package de.tomalbrc.bil.util;
+
+import de.tomalbrc.bil.BIL;
+import de.tomalbrc.bil.core.holder.base.AbstractElementHolder;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the async ticks of holders in parallel.
+ * <p>
+ * The scheduled holders of a level are split into batches, which are processed by a work-stealing pool.
+ * A single holder is always ticked by one thread, so the packets of a holder are still sent in order.
+ * <p>
+ * The pool is owned by BIL and shared by all levels, it is created on first use and shut down when the server stops.
+ */
+public class AsyncTickScheduler {
+    @Nullable
+    private static ForkJoinPool pool;
+
+    private static final AtomicLong firstTaskStart = new AtomicLong(Long.MAX_VALUE);
+    private static final AtomicLong lastTaskEnd = new AtomicLong(Long.MIN_VALUE);
+    private static int scheduledHolders;
+    private static int maxQueueDepth;
+    private static volatile Stats lastTickStats = new Stats(0, 0, 0, 0);
+
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            ModConfig config = ModConfig.getInstance();
+            int threads = config.asyncTickThreads;
+            if (threads <= 0) {
+                threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            }
+
+            int priority = Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, config.asyncTickThreadPriority));
+            AtomicInteger threadCount = new AtomicInteger();
+            pool = new ForkJoinPool(threads, forkJoinPool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                thread.setName("BIL Async Tick #" + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                thread.setPriority(priority);
+                return thread;
+            }, (thread, throwable) -> BIL.LOGGER.error("Uncaught exception in {}", thread.getName(), throwable), false);
+        }
+        return pool;
+    }
+
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            try {
+                if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                    pool.shutdownNow();
+                }
+            } catch (InterruptedException exception) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            pool = null;
+        }
+    }
+
+    public static ForkJoinTask<Void> schedule(List<AbstractElementHolder> holders) {
+        ForkJoinPool forkJoinPool = getPool();
+        scheduledHolders += holders.size();
+        maxQueueDepth = Math.max(maxQueueDepth, getQueueDepth(forkJoinPool));
+
+        int batchSize = Math.max(1, ModConfig.getInstance().asyncTickBatchSize);
+        return forkJoinPool.submit(new RootTickTask(new TickTask(holders, 0, holders.size(), batchSize)));
+    }
+
+    /**
+     * Called on the main thread once the async ticks of all levels have been joined.
+     */
+    public static void finishTick(long blockedNanos) {
+        long start = firstTaskStart.getAndSet(Long.MAX_VALUE);
+        long end = lastTaskEnd.getAndSet(Long.MIN_VALUE);
+        long wallTime = end >= start ? end - start : 0;
+
+        lastTickStats = new Stats(scheduledHolders, maxQueueDepth, wallTime, blockedNanos);
+        scheduledHolders = 0;
+        maxQueueDepth = 0;
+    }
+
+    /**
+     * Returns the statistics of the last finished server tick.
+     */
+    public static Stats getLastTickStats() {
+        return lastTickStats;
+    }
+
+    public static synchronized int getThreadCount() {
+        return pool != null ? pool.getParallelism() : 0;
+    }
+
+    public static synchronized int getQueueDepth() {
+        return pool != null ? getQueueDepth(pool) : 0;
+    }
+
+    private static int getQueueDepth(ForkJoinPool pool) {
+        return pool.getQueuedSubmissionCount() + (int) Math.min(Integer.MAX_VALUE, pool.getQueuedTaskCount());
+    }
+
+    /**
+     * @param holders      Number of holders that were ticked.
+     * @param queueDepth   Highest number of queued tasks in the pool when scheduling.
+     * @param wallTime     Nanoseconds between the first async tick starting and the last one finishing.
+     * @param blockedTime  Nanoseconds the main thread waited for async ticks to finish.
+     */
+    public record Stats(int holders, int queueDepth, long wallTime, long blockedTime) {
+    }
+
+    private static class RootTickTask extends RecursiveAction {
+        private final TickTask task;
+
+        private RootTickTask(TickTask task) {
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            long start = System.nanoTime();
+            try {
+                this.task.invoke();
+            } finally {
+                long end = System.nanoTime();
+                firstTaskStart.accumulateAndGet(start, Math::min);
+                lastTaskEnd.accumulateAndGet(end, Math::max);
+            }
+        }
+    }
+
+    private static class TickTask extends RecursiveAction {
+        private final List<AbstractElementHolder> holders;
+        private final int start;
+        private final int end;
+        private final int batchSize;
+
+        private TickTask(List<AbstractElementHolder> holders, int start, int end, int batchSize) {
+            this.holders = holders;
+            this.start = start;
+            this.end = end;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.end - this.start <= this.batchSize) {
+                for (int i = this.start; i < this.end; i++) {
+                    this.holders.get(i).asyncTick();
+                }
+            } else {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(
+                        new TickTask(this.holders, this.start, middle, this.batchSize),
+                        new TickTask(this.holders, middle, this.end, this.batchSize)
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package de.tomalbrc.bil.util;
+
+import de.tomalbrc.bil.BIL;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool that runs the parallel parts of model imports.
+ * <p>
+ * The pool is owned by BIL and shared by all imports, so importing never runs on the common pool of the caller.
+ * It is created on first use and never shut down, its threads are daemon threads that stop when they are idle.
+ */
+public class ImportPool {
+    @Nullable
+    private static ForkJoinPool pool;
+
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            int threads = ModConfig.getInstance().batchImportThreads;
+            if (threads <= 0) {
+                threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            }
+
+            AtomicInteger threadCount = new AtomicInteger();
+            pool = new ForkJoinPool(threads, forkJoinPool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                thread.setName("BIL Model Import #" + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }, (thread, throwable) -> BIL.LOGGER.error("Uncaught exception in {}", thread.getName(), throwable), false);
+        }
+        return pool;
+    }
+
+    /**
+     * Runs the task on the import pool and blocks until it is done.
+     * <p>
+     * Parallel streams started by the task use the import pool as well. Tasks started from a thread of the import
+     * pool run directly on that thread.
+     */
+    public static void invoke(Runnable task) {
+        ForkJoinPool forkJoinPool = getPool();
+        if (ForkJoinTask.getPool() == forkJoinPool) {
+            task.run();
+        } else {
+            forkJoinPool.submit(task).join();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package de.tomalbrc.bil.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.annotations.SerializedName;
+import de.tomalbrc.bil.BIL;
+import de.tomalbrc.bil.core.model.LevelOfDetail;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Server wide settings, read from config/bil.json.
+ */
+public class ModConfig {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static ModConfig instance = new ModConfig();
+
+    // Baked poses that differ less than this from the previous pose of a bone are not stored.
+    @SerializedName("pose_epsilon")
+    public float poseEpsilon = 1.0E-4F;
+
+    // Number of threads used for async holder ticks, 0 uses all but one of the available processors.
+    @SerializedName("async_tick_threads")
+    public int asyncTickThreads = 0;
+
+    // Java thread priority of the async tick threads, between 1 and 10.
+    @SerializedName("async_tick_thread_priority")
+    public int asyncTickThreadPriority = Thread.NORM_PRIORITY;
+
+    // Number of holders a single async tick task processes before it is split up.
+    @SerializedName("async_tick_batch_size")
+    public int asyncTickBatchSize = 16;
+
+    // Interpolation duration of bone displays, in ticks.
+    @SerializedName("interpolation_duration")
+    public int interpolationDuration = 2;
+
+    // Number of ticks between bone updates of models, animations are sampled ahead and interpolated in between.
+    @SerializedName("update_interval")
+    public int updateInterval = 1;
+
+    // Sends cached data values for bones that play an unmodified baked pose, instead of diffing their data trackers.
+    @SerializedName("cache_transform_data")
+    public boolean cacheTransformData = true;
+
+    // Number of threads used to import models, 0 uses all but one of the available processors.
+    @SerializedName("batch_import_threads")
+    public int batchImportThreads = 0;
+
+    // Approximate heap in megabytes that models being imported together may use, further models wait until it is free.
+    @SerializedName("batch_import_memory_mb")
+    public int batchImportMemoryMb = 512;
+
+    // Stores imported models in config/bil/cache, so unchanged models are not imported again on the next start.
+    @SerializedName("baked_model_cache")
+    public boolean bakedModelCache = true;
+
+    // Evaluates bones whose animation channels are single Molang keyframes while playing, instead of baking their frames.
+    @SerializedName("live_molang_channels")
+    public boolean liveMolangChannels = false;
+
+    // Minimum number of watching players for packets of a holder to be encoded once and shared between them, 0 disables it.
+    @SerializedName("encode_once_min_watchers")
+    public int encodeOnceMinWatchers = 2;
+
+    // Level of detail is off unless a server or model opts in, so models keep updating every tick by default.
+    // Distance in blocks from the nearest watching player after which models only update every few ticks, 0 disables it.
+    @SerializedName("lod_far_distance")
+    public float lodFarDistance = 0;
+
+    // Distance in blocks from the nearest watching player after which models stop updating their bones, 0 disables it.
+    @SerializedName("lod_freeze_distance")
+    public float lodFreezeDistance = 0;
+
+    // Number of ticks between updates of far away models.
+    @SerializedName("lod_far_update_interval")
+    public int lodFarUpdateInterval = 3;
+
+    private transient LevelOfDetail levelOfDetail;
+
+    public static ModConfig getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the level of detail settings used for models that don't define their own.
+     */
+    public LevelOfDetail getLevelOfDetail() {
+        if (this.levelOfDetail == null) {
+            this.levelOfDetail = new LevelOfDetail(this.updateInterval, this.lodFarDistance, this.lodFreezeDistance, this.lodFarUpdateInterval);
+        }
+        return this.levelOfDetail;
+    }
+
+    public static void load() {
+        Path path = FabricLoader.getInstance().getConfigDir().resolve("bil.json");
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path)) {
+                ModConfig config = GSON.fromJson(reader, ModConfig.class);
+                if (config != null) {
+                    instance = config;
+                }
+            } catch (Exception exception) {
+                BIL.LOGGER.error("Failed to read {}, using default values", path, exception);
+                return;
+            }
+        }
+
+        // Write the file back, so that newly added options show up.
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            GSON.toJson(instance, writer);
+        } catch (Exception exception) {
+            BIL.LOGGER.error("Failed to write {}", path, exception);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package de.tomalbrc.bil.util;
+
+import de.tomalbrc.bil.mixin.accessor.ConnectionAccessor;
+import eu.pb4.polymer.core.impl.networking.PacketPatcher;
+import eu.pb4.polymer.networking.api.util.ServerDynamicPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOutboundHandler;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.network.CipherEncoder;
+import net.minecraft.network.CompressionEncoder;
+import net.minecraft.network.Connection;
+import net.minecraft.network.ConnectionProtocol;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.PacketBundleUnpacker;
+import net.minecraft.network.PacketEncoder;
+import net.minecraft.network.Varint21LengthFieldPrepender;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.game.ClientGamePacketListener;
+import net.minecraft.network.protocol.game.ClientboundBundleDelimiterPacket;
+import net.minecraft.network.protocol.game.ClientboundBundlePacket;
+import net.minecraft.network.protocol.game.ClientboundMoveEntityPacket;
+import net.minecraft.network.protocol.game.ClientboundRotateHeadPacket;
+import net.minecraft.network.protocol.game.ClientboundSetEntityDataPacket;
+import net.minecraft.network.protocol.game.ClientboundSetPassengersPacket;
+import net.minecraft.network.protocol.game.ClientboundTeleportEntityPacket;
+import net.minecraft.network.syncher.EntityDataSerializer;
+import net.minecraft.network.syncher.EntityDataSerializers;
+import net.minecraft.network.syncher.SynchedEntityData;
+import net.minecraft.server.network.ServerGamePacketListenerImpl;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends the packets of a holder to all of its watching players, encoding player independent packets only once.
+ * <p>
+ * Encoded packets are written to the channel of every player as retained duplicates of the same buffer.
+ * The packet encoder of the pipeline passes buffers through, so they are only length prefixed, compressed and encrypted per player.
+ * Packets that Polymer patches for a player, or that contain player dependent data such as items, are sent through the connection as usual.
+ * <p>
+ * Connections whose pipeline has an outbound handler other than the vanilla ones, for example one added by another mod,
+ * only get regular packets, since that handler may expect packet objects or drop buffers it doesn't know.
+ */
+public class PacketBroadcaster {
+    // Outbound handlers of the vanilla pipeline, which write encoded buffers through to the next handler.
+    private static final ReferenceOpenHashSet<Class<?>> PASS_THROUGH_HANDLERS = new ReferenceOpenHashSet<>(List.of(
+            PacketEncoder.class,
+            PacketBundleUnpacker.class,
+            Varint21LengthFieldPrepender.class,
+            CompressionEncoder.class,
+            CipherEncoder.class
+    ));
+
+    // Entity data serializers that write the same bytes for every player.
+    private static final ReferenceOpenHashSet<EntityDataSerializer<?>> PLAYER_INDEPENDENT_SERIALIZERS = new ReferenceOpenHashSet<>(List.of(
+            EntityDataSerializers.BYTE,
+            EntityDataSerializers.INT,
+            EntityDataSerializers.LONG,
+            EntityDataSerializers.FLOAT,
+            EntityDataSerializers.BOOLEAN,
+            EntityDataSerializers.VECTOR3,
+            EntityDataSerializers.QUATERNION
+    ));
+
+    /**
+     * Sends the packets to the given connections, up to the first null entry, without flushing.
+     */
+    public static void sendPacketsNoFlush(ServerGamePacketListenerImpl[] connections, List<Packet<ClientGamePacketListener>> packets) {
+        int count = 0;
+        while (count < connections.length && connections[count] != null) {
+            count++;
+        }
+
+        int minWatchers = ModConfig.getInstance().encodeOnceMinWatchers;
+        if (minWatchers <= 0 || count < minWatchers) {
+            for (int i = 0; i < count; i++) {
+                Utils.sendPacketsNoFlush(connections[i], packets);
+            }
+            return;
+        }
+
+        ObjectArrayList<Packet<ClientGamePacketListener>> flattened = flatten(packets);
+        ByteBuf[] encoded = new ByteBuf[flattened.size()];
+        ConnectionProtocol.CodecData<?> codec = null;
+
+        try {
+            for (int i = 0; i < count; i++) {
+                ServerGamePacketListenerImpl conn = connections[i];
+                Channel channel = ((ConnectionAccessor) Utils.getConnection(conn)).getChannel();
+                ConnectionProtocol.CodecData<?> connectionCodec = channel.attr(Connection.ATTRIBUTE_CLIENTBOUND_PROTOCOL).get();
+
+                if (codec == null && connectionCodec != null && connectionCodec.protocol() == ConnectionProtocol.PLAY) {
+                    codec = connectionCodec;
+                    encode(codec, flattened, encoded);
+                }
+
+                if (codec != null && connectionCodec == codec && passesBuffersThrough(channel)) {
+                    send(conn, channel, flattened, encoded);
+                } else {
+                    Utils.sendPacketsNoFlush(conn, packets);
+                }
+            }
+        } finally {
+            for (ByteBuf buf : encoded) {
+                if (buf != null) {
+                    buf.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether every outbound handler of the pipeline is known to pass encoded buffers through.
+     */
+    private static boolean passesBuffersThrough(Channel channel) {
+        for (Map.Entry<String, ChannelHandler> entry : channel.pipeline()) {
+            ChannelHandler handler = entry.getValue();
+            if (handler instanceof ChannelOutboundHandler && !PASS_THROUGH_HANDLERS.contains(handler.getClass())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ObjectArrayList<Packet<ClientGamePacketListener>> flatten(List<Packet<ClientGamePacketListener>> packets) {
+        ObjectArrayList<Packet<ClientGamePacketListener>> flattened = new ObjectArrayList<>(packets.size());
+        for (Packet<ClientGamePacketListener> packet : packets) {
+            if (packet instanceof ClientboundBundlePacket bundlePacket) {
+                for (Packet<ClientGamePacketListener> subPacket : bundlePacket.subPackets()) {
+                    flattened.add(subPacket);
+                }
+            } else {
+                flattened.add(packet);
+            }
+        }
+        return flattened;
+    }
+
+    private static void encode(ConnectionProtocol.CodecData<?> codec, List<Packet<ClientGamePacketListener>> packets, ByteBuf[] encoded) {
+        for (int i = 0; i < packets.size(); i++) {
+            Packet<ClientGamePacketListener> packet = packets.get(i);
+            int packetId = codec.packetId(packet);
+            if (packetId < 0 || !isPlayerIndependent(packet)) {
+                continue;
+            }
+
+            ByteBuf buf = Unpooled.buffer();
+            try {
+                FriendlyByteBuf friendlyBuf = new FriendlyByteBuf(buf);
+                friendlyBuf.writeVarInt(packetId);
+                packet.write(friendlyBuf);
+                encoded[i] = buf;
+            } catch (Throwable throwable) {
+                // Let the regular path encode it, which also reports the error properly.
+                buf.release();
+            }
+        }
+    }
+
+    private static boolean isPlayerIndependent(Packet<?> packet) {
+        if (packet instanceof ClientboundSetEntityDataPacket dataPacket) {
+            for (SynchedEntityData.DataValue<?> value : dataPacket.packedItems()) {
+                if (!PLAYER_INDEPENDENT_SERIALIZERS.contains(value.serializer())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        return packet instanceof ClientboundTeleportEntityPacket
+                || packet instanceof ClientboundMoveEntityPacket
+                || packet instanceof ClientboundRotateHeadPacket
+                || packet instanceof ClientboundSetPassengersPacket;
+    }
+
+    private static void send(ServerGamePacketListenerImpl conn, Channel channel, List<Packet<ClientGamePacketListener>> packets, ByteBuf[] encoded) {
+        // Buffers written to the channel and packets sent through the connection end up in the same event loop queue,
+        // so they arrive in the order they are sent here.
+        boolean bundle = packets.size() > 1;
+        int bundleSize = 0;
+        if (bundle) {
+            Utils.sendNoFlush(conn, new ClientboundBundleDelimiterPacket());
+        }
+
+        for (int i = 0; i < packets.size(); i++) {
+            Packet<ClientGamePacketListener> packet = packets.get(i);
+            Packet<?> modifiedPacket = PacketPatcher.replace(conn, packet);
+            if (modifiedPacket instanceof ServerDynamicPacket || PacketPatcher.prevent(conn, modifiedPacket)) {
+                continue;
+            }
+
+            if (bundle && ++bundleSize > Utils.BUNDLE_SIZE_LIMIT) {
+                Utils.sendNoFlush(conn, new ClientboundBundleDelimiterPacket());
+                Utils.sendNoFlush(conn, new ClientboundBundleDelimiterPacket());
+                bundleSize = 1;
+            }
+
+            if (encoded[i] != null && modifiedPacket == packet) {
+                channel.write(encoded[i].retainedDuplicate(), channel.voidPromise());
+            } else {
+                Utils.sendNoFlush(conn, modifiedPacket);
+            }
+        }
+
+        if (bundle) {
+            Utils.sendNoFlush(conn, new ClientboundBundleDelimiterPacket());
+        }
+
+        for (Packet<ClientGamePacketListener> packet : packets) {
+            PacketPatcher.sendExtra(conn, packet);
+        }
+    }
+}
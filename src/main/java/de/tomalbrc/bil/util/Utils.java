@@ -6,8 +6,10 @@ import de.tomalbrc.bil.mixin.accessor.ServerCommonPacketListenerImplAccessor;
 import eu.pb4.polymer.core.impl.networking.PacketPatcher;
 import eu.pb4.polymer.networking.api.util.ServerDynamicPacket;
 import eu.pb4.polymer.virtualentity.api.elements.InteractionElement;
+import eu.pb4.polymer.virtualentity.api.tracker.DataTrackerLike;
 import eu.pb4.polymer.virtualentity.api.tracker.EntityTrackedData;
 import eu.pb4.polymer.virtualentity.api.tracker.InteractionTrackedData;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import net.minecraft.CrashReport;
 import net.minecraft.CrashReportCategory;
 import net.minecraft.ReportedException;
@@ -16,7 +18,9 @@ import net.minecraft.network.PacketSendListener;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.protocol.Packet;
 import net.minecraft.network.protocol.game.ClientGamePacketListener;
+import net.minecraft.network.protocol.game.ClientboundBundlePacket;
 import net.minecraft.network.protocol.game.ClientboundSetEntityDataPacket;
+import net.minecraft.network.syncher.EntityDataAccessor;
 import net.minecraft.network.syncher.SynchedEntityData;
 import net.minecraft.server.network.ServerCommonPacketListenerImpl;
 import net.minecraft.server.network.ServerGamePacketListenerImpl;
@@ -29,6 +33,9 @@ import java.util.List;
 public class Utils {
     public static final ServerGamePacketListenerImpl[] EMPTY_CONNECTION_ARRAY = new ServerGamePacketListenerImpl[0];
 
+    // Maximum number of packets the client accepts in a single bundle.
+    static final int BUNDLE_SIZE_LIMIT = 4096;
+
     public static Connection getConnection(ServerCommonPacketListenerImpl networkHandler) {
         return ((ServerCommonPacketListenerImplAccessor) networkHandler).getConnection();
     }
@@ -45,6 +52,23 @@ public class Utils {
         return (value & 1 << flag) != 0;
     }
 
+    /**
+     * Copies every tracked data value of the source that differs from its default to the target.
+     * Values are shared, mutable ones like item stacks have to be copied by the caller.
+     */
+    public static void copyTrackedData(DataTrackerLike source, DataTrackerLike target) {
+        List<SynchedEntityData.DataValue<?>> values = source.getChangedEntries();
+        if (values != null) {
+            for (SynchedEntityData.DataValue<?> value : values) {
+                copyTrackedValue(value, target);
+            }
+        }
+    }
+
+    private static <T> void copyTrackedValue(SynchedEntityData.DataValue<T> value, DataTrackerLike target) {
+        target.set(new EntityDataAccessor<>(value.id(), value.serializer()), value.value());
+    }
+
     public static List<Packet<ClientGamePacketListener>> updateClientInteraction(InteractionElement interaction, EntityDimensions dimensions) {
         return updateClientInteraction(interaction, dimensions, dimensions.height);
     }
@@ -75,6 +99,9 @@ public class Utils {
      * we will often have to send a ton of separate packet from a different thread.
      * Even though we always make sure to start and finish this process before player connection flushing gets resumed at the end of the game tick,
      * the normal send method will still flush the connection for every packet, causing a significant downgrade in network performance and ping.
+     * <p>
+     * This can be called for the same connection from multiple async tick threads at once.
+     * The connection hands the packet to the event loop of its channel, which queues writes from any thread.
      */
     public static void sendPacketNoFlush(ServerCommonPacketListenerImpl networkHandler, Packet<ClientGamePacketListener> packet) {
         Packet<?> modifiedPacket = PacketPatcher.replace(networkHandler, packet);
@@ -82,15 +109,59 @@ public class Utils {
             return;
         }
 
+        sendNoFlush(networkHandler, modifiedPacket);
+        PacketPatcher.sendExtra(networkHandler, packet);
+    }
+
+    /**
+     * Same as {@link #sendPacketNoFlush(ServerCommonPacketListenerImpl, Packet)}, but sends all packets in a single bundle.
+     * <p>
+     * Every packet is patched once for the connection, and the client handles all of them in the same frame.
+     */
+    public static void sendPacketsNoFlush(ServerCommonPacketListenerImpl networkHandler, List<Packet<ClientGamePacketListener>> packets) {
+        if (packets.size() == 1 && !(packets.get(0) instanceof ClientboundBundlePacket)) {
+            sendPacketNoFlush(networkHandler, packets.get(0));
+            return;
+        }
+
+        ObjectArrayList<Packet<ClientGamePacketListener>> bundle = new ObjectArrayList<>(packets.size());
+        for (Packet<ClientGamePacketListener> packet : packets) {
+            // Bundles can't be nested, so their packets are added to the outer bundle.
+            if (packet instanceof ClientboundBundlePacket bundlePacket) {
+                for (Packet<ClientGamePacketListener> subPacket : bundlePacket.subPackets()) {
+                    addPatchedPacket(networkHandler, subPacket, bundle);
+                }
+            } else {
+                addPatchedPacket(networkHandler, packet, bundle);
+            }
+        }
+
+        for (int start = 0; start < bundle.size(); start += BUNDLE_SIZE_LIMIT) {
+            List<Packet<ClientGamePacketListener>> subPackets = bundle.subList(start, Math.min(bundle.size(), start + BUNDLE_SIZE_LIMIT));
+            sendNoFlush(networkHandler, subPackets.size() == 1 ? subPackets.get(0) : new ClientboundBundlePacket(new ObjectArrayList<>(subPackets)));
+        }
+
+        for (Packet<ClientGamePacketListener> packet : packets) {
+            PacketPatcher.sendExtra(networkHandler, packet);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addPatchedPacket(ServerCommonPacketListenerImpl networkHandler, Packet<ClientGamePacketListener> packet, List<Packet<ClientGamePacketListener>> bundle) {
+        Packet<?> modifiedPacket = PacketPatcher.replace(networkHandler, packet);
+        if (!(modifiedPacket instanceof ServerDynamicPacket) && !PacketPatcher.prevent(networkHandler, modifiedPacket)) {
+            bundle.add((Packet<ClientGamePacketListener>) modifiedPacket);
+        }
+    }
+
+    static void sendNoFlush(ServerCommonPacketListenerImpl networkHandler, Packet<?> packet) {
         try {
-            Utils.getConnection(networkHandler).send(modifiedPacket, null, false);
+            Utils.getConnection(networkHandler).send(packet, null, false);
         } catch (Throwable throwable) {
             CrashReport report = CrashReport.forThrowable(throwable, "Sending packet");
             CrashReportCategory category = report.addCategory("Packet being sent");
-            category.setDetail("Packet class", () -> modifiedPacket.getClass().getCanonicalName());
+            category.setDetail("Packet class", () -> packet.getClass().getCanonicalName());
             throw new ReportedException(report);
         }
-
-        PacketPatcher.sendExtra(networkHandler, packet);
     }
 }
@@ -24,6 +24,17 @@ public final class CommandParser {
         return list.toArray(EMPTY_COMMAND_ARRAY);
     }
 
+    /**
+     * Creates commands from already sanitized command strings, as returned by {@link ParsedCommand#command()}.
+     */
+    public static ParsedCommand[] of(String[] commands) {
+        ParsedCommand[] parsed = new ParsedCommand[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            parsed[i] = new ParsedCommand(commands[i]);
+        }
+        return parsed;
+    }
+
     @Nullable
     private static String sanitizeCommand(String command, @Nullable String prefix) {
         command = command.trim();
@@ -24,6 +24,10 @@ public class ParsedCommand {
         this.command = command;
     }
 
+    public String command() {
+        return this.command;
+    }
+
     public int execute(CommandDispatcher<CommandSourceStack> dispatcher, CommandSourceStack source) {
         if (this.parsed == null) {
             this.parsed = dispatcher.parse(this.command, PARSING_SOURCE);
@@ -0,0 +1,320 @@
+package de.tomalbrc.bil.file.importer;
+
+import de.tomalbrc.bil.file.bbmodel.BbKeyframe;
+import de.tomalbrc.bil.file.extra.interpolation.Interpolation;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares sampling through a {@link KeyframeIndex} with the sampler it replaced, which searched the sorted
+ * keyframes of every channel for each sample.
+ * <p>
+ * Bezier keyframes weren't supported by that sampler, their expected values are solved per sample in double precision.
+ */
+class KeyframeIndexTest {
+    private static final float EPSILON = 1.0E-4f;
+    private static final float BEZIER_EPSILON = 1.0E-3f;
+    private static final float STEP = 0.05f;
+
+    @Test
+    void linear() throws MolangRuntimeException {
+        List<BbKeyframe> keyframes = List.of(
+                keyframe(BbKeyframe.Channel.position, 0, Interpolation.LINEAR, 0, 0, 0),
+                keyframe(BbKeyframe.Channel.position, 1, Interpolation.LINEAR, 2, -4, 1),
+                keyframe(BbKeyframe.Channel.position, 2.5f, Interpolation.LINEAR, -3, 1, 8)
+        );
+        assertMatchesBaseline(keyframes, -0.5f, 3, EPSILON);
+    }
+
+    @Test
+    void step() throws MolangRuntimeException {
+        List<BbKeyframe> keyframes = List.of(
+                keyframe(BbKeyframe.Channel.rotation, 0, Interpolation.STEP, 0, 90, 0),
+                keyframe(BbKeyframe.Channel.rotation, 0.5f, Interpolation.STEP, 45, 0, 10),
+                keyframe(BbKeyframe.Channel.rotation, 1.5f, Interpolation.STEP, -30, 15, 5)
+        );
+        assertMatchesBaseline(keyframes, -0.5f, 2, EPSILON);
+    }
+
+    @Test
+    void catmullRom() throws MolangRuntimeException {
+        // the first keyframe is after 0, so the first segment has no keyframe before it
+        List<BbKeyframe> keyframes = List.of(
+                keyframe(BbKeyframe.Channel.position, 0.5f, Interpolation.SMOOTH, 0, 1, 0),
+                keyframe(BbKeyframe.Channel.position, 1, Interpolation.SMOOTH, 3, -2, 1),
+                keyframe(BbKeyframe.Channel.position, 1.75f, Interpolation.SMOOTH, -1, 4, 2),
+                keyframe(BbKeyframe.Channel.position, 2, Interpolation.SMOOTH, 5, 0, -3),
+                keyframe(BbKeyframe.Channel.position, 3, Interpolation.SMOOTH, 2, 2, 2)
+        );
+        assertMatchesBaseline(keyframes, -0.5f, 3.5f, EPSILON);
+    }
+
+    @Test
+    void bezier() throws MolangRuntimeException {
+        BbKeyframe first = keyframe(BbKeyframe.Channel.position, 0, Interpolation.BEZIER, 0, 0, 0);
+        first.bezierRightTime = new Vector3f(0.2f, 0.4f, 0.1f);
+        first.bezierRightValue = new Vector3f(1, -2, 0.5f);
+
+        BbKeyframe second = keyframe(BbKeyframe.Channel.position, 1, Interpolation.BEZIER, 4, 2, -1);
+        second.bezierLeftTime = new Vector3f(-0.3f, -0.1f, -0.5f);
+        second.bezierLeftValue = new Vector3f(0.5f, 1, -1);
+        second.bezierRightTime = new Vector3f(0.25f, 0.25f, 0.25f);
+        second.bezierRightValue = new Vector3f(-1, 0, 2);
+
+        // handles without time and value use the Blockbench defaults
+        BbKeyframe third = keyframe(BbKeyframe.Channel.position, 2, Interpolation.BEZIER, -2, 3, 3);
+
+        // handle times longer than the segment are clamped
+        third.bezierRightTime = new Vector3f(5, 0.5f, 0.1f);
+        third.bezierRightValue = new Vector3f(2, 2, 2);
+        BbKeyframe fourth = keyframe(BbKeyframe.Channel.position, 2.5f, Interpolation.BEZIER, 1, 1, 1);
+        fourth.bezierLeftTime = new Vector3f(-5, -0.2f, -0.2f);
+
+        assertMatchesBaseline(List.of(first, second, third, fourth), -0.5f, 3, BEZIER_EPSILON);
+    }
+
+    @Test
+    void bezierNextToOtherInterpolations() throws MolangRuntimeException {
+        // a segment is a bezier curve if either of its keyframes is one
+        BbKeyframe bezier = keyframe(BbKeyframe.Channel.rotation, 1, Interpolation.BEZIER, 9, 0, -4.5f);
+        bezier.bezierLeftTime = new Vector3f(-0.2f);
+        bezier.bezierRightTime = new Vector3f(0.3f);
+
+        List<BbKeyframe> keyframes = List.of(
+                keyframe(BbKeyframe.Channel.rotation, 0, Interpolation.LINEAR, 0, 0, 0),
+                bezier,
+                keyframe(BbKeyframe.Channel.rotation, 2, Interpolation.SMOOTH, 0, 4.5f, 0),
+                keyframe(BbKeyframe.Channel.rotation, 3, Interpolation.LINEAR, 1, 1, 1)
+        );
+        assertMatchesBaseline(keyframes, 0, 3.5f, BEZIER_EPSILON);
+    }
+
+    @Test
+    void equalTimes() throws MolangRuntimeException {
+        // keyframes with the same time keep their file order, the first of them is used as the keyframe before
+        List<BbKeyframe> keyframes = List.of(
+                keyframe(BbKeyframe.Channel.position, 0, Interpolation.SMOOTH, 0, 0, 0),
+                keyframe(BbKeyframe.Channel.position, 1, Interpolation.SMOOTH, 1, 2, 3),
+                keyframe(BbKeyframe.Channel.position, 1, Interpolation.LINEAR, -1, -2, -3),
+                keyframe(BbKeyframe.Channel.position, 2, Interpolation.SMOOTH, 4, 4, 4),
+                keyframe(BbKeyframe.Channel.position, 2, Interpolation.SMOOTH, 8, 8, 8),
+                keyframe(BbKeyframe.Channel.position, 3, Interpolation.STEP, 0, 1, 0),
+                keyframe(BbKeyframe.Channel.position, 3, Interpolation.STEP, 2, 1, 2)
+        );
+        assertMatchesBaseline(keyframes, 0, 3.5f, EPSILON);
+    }
+
+    @Test
+    void allChannels() throws MolangRuntimeException {
+        // keyframes are listed out of order, the scale channel has no keyframes
+        List<BbKeyframe> keyframes = List.of(
+                keyframe(BbKeyframe.Channel.rotation, 1, Interpolation.LINEAR, 90, 0, 0),
+                keyframe(BbKeyframe.Channel.position, 2, Interpolation.SMOOTH, 0, 5, 0),
+                keyframe(BbKeyframe.Channel.position, 0, Interpolation.SMOOTH, 0, 0, 0),
+                keyframe(BbKeyframe.Channel.rotation, 0, Interpolation.LINEAR, 0, 0, 0),
+                keyframe(BbKeyframe.Channel.position, 1, Interpolation.SMOOTH, 1, 1, 1),
+                keyframe(BbKeyframe.Channel.rotation, 2, Interpolation.LINEAR, 0, 90, 0)
+        );
+        assertMatchesBaseline(keyframes, 0, 2.5f, EPSILON);
+    }
+
+    @Test
+    void constantChannel() throws MolangRuntimeException {
+        List<BbKeyframe> keyframes = List.of(
+                keyframe(BbKeyframe.Channel.scale, 0, Interpolation.SMOOTH, 2, 2, 2),
+                keyframe(BbKeyframe.Channel.scale, 1, Interpolation.LINEAR, 2, 2, 2),
+                keyframe(BbKeyframe.Channel.scale, 2, Interpolation.STEP, 2, 2, 2)
+        );
+        assertMatchesBaseline(keyframes, 0, 2.5f, EPSILON);
+    }
+
+    private static void assertMatchesBaseline(List<BbKeyframe> keyframes, float from, float to, float epsilon) throws MolangRuntimeException {
+        KeyframeIndex index = KeyframeIndex.of(keyframes);
+        KeyframeIndex.Buffers buffers = new KeyframeIndex.Buffers();
+        Vector3f pos = new Vector3f();
+        Vector3f rot = new Vector3f();
+        Vector3f scale = new Vector3f();
+
+        // the sampled frames, the keyframe times and the times right around them
+        List<Float> times = new ArrayList<>();
+        for (float time = from; time <= to; time += STEP) {
+            times.add(time);
+        }
+        for (BbKeyframe keyframe : keyframes) {
+            times.add(keyframe.time);
+            times.add(Math.nextDown(keyframe.time));
+            times.add(Math.nextUp(keyframe.time));
+        }
+
+        for (float time : times) {
+            index.sample(null, null, time, pos, rot, scale, buffers);
+            assertVector(BaselineSampler.sample(keyframes, BbKeyframe.Channel.position, time, new Vector3f()), pos, epsilon, "position", time);
+            assertVector(BaselineSampler.sample(keyframes, BbKeyframe.Channel.rotation, time, new Vector3f()), rot, epsilon, "rotation", time);
+            assertVector(BaselineSampler.sample(keyframes, BbKeyframe.Channel.scale, time, new Vector3f(1, 1, 1)), scale, epsilon, "scale", time);
+        }
+    }
+
+    private static void assertVector(Vector3f expected, Vector3f actual, float epsilon, String channel, float time) {
+        String message = channel + " at " + time;
+        assertEquals(expected.x, actual.x, epsilon, message);
+        assertEquals(expected.y, actual.y, epsilon, message);
+        assertEquals(expected.z, actual.z, epsilon, message);
+    }
+
+    private static BbKeyframe keyframe(BbKeyframe.Channel channel, float time, Interpolation interpolation, float x, float y, float z) {
+        BbKeyframe keyframe = new BbKeyframe();
+        keyframe.channel = channel;
+        keyframe.time = time;
+        keyframe.interpolation = interpolation;
+        keyframe.dataPoints = List.of(Map.of("x", value(x), "y", value(y), "z", value(z)));
+        return keyframe;
+    }
+
+    private static BbKeyframe.DataPointValue value(float value) {
+        BbKeyframe.DataPointValue dataPointValue = new BbKeyframe.DataPointValue();
+        dataPointValue.setValue(value);
+        return dataPointValue;
+    }
+
+    /**
+     * The keyframe search and interpolators of the previous sampler.
+     */
+    private static class BaselineSampler {
+        private static Vector3f sample(List<BbKeyframe> keyframes, BbKeyframe.Channel channel, float time, Vector3f defaultValue) throws MolangRuntimeException {
+            Iterator<BbKeyframe> iterator = keyframes.stream().filter(x -> x.channel == channel).sorted().iterator();
+
+            BbKeyframe before = null;
+            BbKeyframe beforeBefore = null;
+            BbKeyframe after = null;
+            BbKeyframe afterAfter = null;
+
+            while (iterator.hasNext()) {
+                BbKeyframe currentFrame = iterator.next();
+                if (currentFrame.time <= time) {
+                    if (before == null || currentFrame.time > before.time) {
+                        beforeBefore = before;
+                        before = currentFrame;
+                    }
+                } else {
+                    after = currentFrame;
+                    if (iterator.hasNext()) {
+                        afterAfter = iterator.next();
+                    }
+                    break;
+                }
+            }
+
+            if (before == null) {
+                return defaultValue;
+            } else if (after == null) {
+                return before.getVector3f(0, null, null);
+            }
+
+            if (before.time > 0 && beforeBefore == null) {
+                beforeBefore = before;
+            }
+
+            float t = (time - before.time) / (after.time - before.time);
+            Vector3f beforePlus = beforeBefore == null ? null : beforeBefore.getVector3f(0, null, null);
+            Vector3f beforeValue = before.getVector3f(0, null, null);
+            Vector3f afterValue = after.getVector3f(0, null, null);
+            Vector3f afterPlus = afterAfter == null ? null : afterAfter.getVector3f(0, null, null);
+
+            if (before.interpolation == Interpolation.BEZIER || after.interpolation == Interpolation.BEZIER) {
+                return bezier(t, before, beforeValue, after, afterValue);
+            }
+
+            return switch (before.interpolation) {
+                case LINEAR -> beforeValue.lerp(afterValue, t, new Vector3f());
+                case STEP -> new Vector3f(t >= 1.0f ? afterValue : beforeValue);
+                default -> catmullRom(t, beforePlus, beforeValue, afterValue, afterPlus);
+            };
+        }
+
+        private static Vector3f catmullRom(float t, Vector3f beforePlus, Vector3f before, Vector3f after, Vector3f afterPlus) {
+            int i = 0;
+            Vector3f[] points = new Vector3f[2 + (beforePlus == null ? 0 : 1) + (afterPlus == null ? 0 : 1)];
+
+            if (beforePlus != null) points[i++] = beforePlus;
+            points[i++] = before;
+            points[i++] = after;
+            if (afterPlus != null) points[i] = afterPlus;
+
+            float factor = (points.length - 1) * ((t + (beforePlus != null ? 1 : 0)) / (points.length - 1));
+            int segment = (int) Math.floor(factor);
+
+            Vector3f p0 = points[Math.max(segment - 1, 0)];
+            Vector3f p1 = points[segment];
+            Vector3f p2 = points[Math.min(segment + 1, points.length - 1)];
+            Vector3f p3 = points[Math.min(segment + 2, points.length - 1)];
+
+            float influence = factor - segment;
+            return new Vector3f(
+                    catmullRomSpline(influence, p0.x, p1.x, p2.x, p3.x),
+                    catmullRomSpline(influence, p0.y, p1.y, p2.y, p3.y),
+                    catmullRomSpline(influence, p0.z, p1.z, p2.z, p3.z)
+            );
+        }
+
+        private static float catmullRomSpline(float t, float p0, float p1, float p2, float p3) {
+            float v0 = (p2 - p0) / 2.0f;
+            float v1 = (p3 - p1) / 2.0f;
+
+            float a = 2.0f * p1 - 2.0f * p2 + v0 + v1;
+            float b = -3.0f * p1 + 3.0f * p2 - 2.0f * v0 - v1;
+
+            return a * t * t * t + b * t * t + v0 * t + p1;
+        }
+
+        private static Vector3f bezier(float t, BbKeyframe before, Vector3f beforeValue, BbKeyframe after, Vector3f afterValue) {
+            float duration = after.time - before.time;
+            Vector3f rightTime = orDefault(before.bezierRightTime, 0.1f);
+            Vector3f rightValue = orDefault(before.bezierRightValue, 0);
+            Vector3f leftTime = orDefault(after.bezierLeftTime, -0.1f);
+            Vector3f leftValue = orDefault(after.bezierLeftValue, 0);
+
+            Vector3f result = new Vector3f();
+            for (int axis = 0; axis < 3; axis++) {
+                double p1 = Math.max(0, Math.min(duration, rightTime.get(axis)));
+                double p2 = duration + Math.max(-duration, Math.min(0, leftTime.get(axis)));
+                double target = Math.max(0, Math.min(1, t)) * duration;
+
+                // the time curve is monotonic, so the curve parameter of the sampled time can be bisected
+                double low = 0;
+                double high = 1;
+                for (int i = 0; i < 64; i++) {
+                    double mid = (low + high) / 2;
+                    if (cubic(0, p1, p2, duration, mid) < target) {
+                        low = mid;
+                    } else {
+                        high = mid;
+                    }
+                }
+
+                double s = (low + high) / 2;
+                float from = beforeValue.get(axis);
+                float to = afterValue.get(axis);
+                result.setComponent(axis, (float) cubic(from, from + rightValue.get(axis), to + leftValue.get(axis), to, s));
+            }
+            return result;
+        }
+
+        private static double cubic(double p0, double p1, double p2, double p3, double s) {
+            double r = 1 - s;
+            return r * r * r * p0 + 3 * r * r * s * p1 + 3 * r * s * s * p2 + s * s * s * p3;
+        }
+
+        private static Vector3f orDefault(@Nullable Vector3f value, float defaultValue) {
+            return value != null ? value : new Vector3f(defaultValue);
+        }
+    }
+}